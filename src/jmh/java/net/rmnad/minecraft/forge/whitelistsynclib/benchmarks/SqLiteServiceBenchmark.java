@@ -0,0 +1,94 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.benchmarks;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.services.SqLiteService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Baseline for the SQLite service at different table sizes.
+ *
+ * Every trial starts from a fresh database file filled with {@code rows} whitelisted players.
+ * The local list used for the database to local sync is missing every tenth player, so each
+ * call finds and applies rows / 10 additions; the callbacks don't touch the list, so every
+ * invocation does the same work.
+ */
+@State(Scope.Benchmark)
+public class SqLiteServiceBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int rows;
+
+    private Path directory;
+    private SqLiteService service;
+
+    private ArrayList<WhitelistedPlayer> players;
+    private ArrayList<WhitelistedPlayer> localPlayers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("whitelistsync-bench");
+        service = new SqLiteService(directory.resolve("whitelist.db").toString(), false);
+        if (!service.initializeDatabase()) {
+            throw new IllegalStateException("Failed to initialize benchmark database");
+        }
+
+        // Fixed seed so every run benchmarks the same table
+        Random random = new Random(rows);
+        players = new ArrayList<>(rows);
+        localPlayers = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            WhitelistedPlayer player = new WhitelistedPlayer(new UUID(random.nextLong(), random.nextLong()), "player" + i, true);
+            players.add(player);
+            if (i % 10 != 0) {
+                localPlayers.add(player);
+            }
+        }
+
+        if (!service.copyLocalWhitelistedPlayersToDatabase(players)) {
+            throw new IllegalStateException("Failed to fill benchmark database");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
+        return service.getWhitelistedPlayersFromDatabase();
+    }
+
+    @Benchmark
+    public boolean copyLocalWhitelistedPlayersToDatabase() {
+        return service.copyLocalWhitelistedPlayersToDatabase(players);
+    }
+
+    @Benchmark
+    public boolean copyDatabaseWhitelistedPlayersToLocal(Blackhole blackhole) {
+        return service.copyDatabaseWhitelistedPlayersToLocal(localPlayers,
+                (uuid, name) -> blackhole.consume(uuid),
+                (uuid, name) -> blackhole.consume(uuid));
+    }
+
+    @Benchmark
+    public boolean addWhitelistPlayer() {
+        WhitelistedPlayer player = players.get(ThreadLocalRandom.current().nextInt(players.size()));
+        return service.addWhitelistPlayer(player.toUUID(), player.getName());
+    }
+}
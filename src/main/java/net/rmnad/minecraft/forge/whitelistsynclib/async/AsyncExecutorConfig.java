@@ -0,0 +1,71 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.async;
+
+/**
+ * Settings for the executor behind an {@link AsyncService}.
+ */
+public class AsyncExecutorConfig {
+
+    // Worker threads, ignored when virtual threads are used
+    private int threadCount = 2;
+    // Jobs allowed to wait for a worker before new jobs are rejected
+    private int queueCapacity = 256;
+    // How long a caller may block for queue space, 0 rejects right away
+    private long maxQueueWaitMillis = 0;
+    private String threadNamePrefix = "WhitelistSync-Worker";
+    // Run jobs on virtual threads when the JVM supports them (Java 21+)
+    private boolean useVirtualThreads = false;
+
+    public AsyncExecutorConfig() {
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public long getMaxQueueWaitMillis() {
+        return maxQueueWaitMillis;
+    }
+
+    public void setMaxQueueWaitMillis(long maxQueueWaitMillis) {
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+    }
+
+    public String getThreadNamePrefix() {
+        return threadNamePrefix;
+    }
+
+    public void setThreadNamePrefix(String threadNamePrefix) {
+        this.threadNamePrefix = threadNamePrefix;
+    }
+
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncExecutorConfig{" +
+                "threadCount=" + threadCount +
+                ", queueCapacity=" + queueCapacity +
+                ", maxQueueWaitMillis=" + maxQueueWaitMillis +
+                ", threadNamePrefix='" + threadNamePrefix + '\'' +
+                ", useVirtualThreads=" + useVirtualThreads +
+                '}';
+    }
+}
@@ -0,0 +1,218 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.async;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.services.BaseService;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.MergeBase;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncWatermark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking variant of {@link BaseService}.
+ *
+ * Every call runs on a bounded worker pool and returns a {@link CompletableFuture}, so the
+ * server tick never waits on the database. Add/remove callbacks from the sync methods are
+ * handed to the callback executor, e.g. the server's main thread executor. If the work
+ * queue is full the returned future fails with a RejectedExecutionException.
+ *
+ * Lists and collections passed in are copied on the calling thread, so the caller may keep
+ * changing them while the job runs. The job only sees that copy; the local lists must be
+ * changed only through the dispatched callbacks, never by the job itself.
+ */
+public class AsyncService {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    private final BaseService service;
+    private final BoundedExecutor executor;
+    private final Executor callbackExecutor;
+
+    public AsyncService(BaseService service) {
+        this(service, new AsyncExecutorConfig(), Runnable::run);
+    }
+
+    /**
+     * @param callbackExecutor where IOnUserAdd/IOnUserRemove are called, Runnable::run calls them on the worker
+     */
+    public AsyncService(BaseService service, AsyncExecutorConfig config, Executor callbackExecutor) {
+        this.service = service;
+        this.executor = new BoundedExecutor(config);
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public BaseService getService() {
+        return service;
+    }
+
+    public CompletableFuture<Boolean> initializeDatabase() {
+        return submit(service::initializeDatabase);
+    }
+
+    // Getter functions
+    public CompletableFuture<ArrayList<WhitelistedPlayer>> getWhitelistedPlayersFromDatabase() {
+        return submit(service::getWhitelistedPlayersFromDatabase);
+    }
+
+    public CompletableFuture<ArrayList<OppedPlayer>> getOppedPlayersFromDatabase() {
+        return submit(service::getOppedPlayersFromDatabase);
+    }
+
+    // The consumer runs on the executor thread.
+    public CompletableFuture<Boolean> streamWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return submit(() -> service.streamWhitelistedPlayersFromDatabase(consumer));
+    }
+
+    public CompletableFuture<Boolean> streamOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return submit(() -> service.streamOppedPlayersFromDatabase(consumer));
+    }
+
+    public CompletableFuture<Boolean> streamAllWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return submit(() -> service.streamAllWhitelistedPlayersFromDatabase(consumer));
+    }
+
+    public CompletableFuture<Boolean> streamAllOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return submit(() -> service.streamAllOppedPlayersFromDatabase(consumer));
+    }
+
+    // Syncing functions
+    public CompletableFuture<Boolean> copyLocalWhitelistedPlayersToDatabase(ArrayList<WhitelistedPlayer> whitelistedPlayers) {
+        ArrayList<WhitelistedPlayer> snapshotWhitelistedPlayers = new ArrayList<>(whitelistedPlayers);
+        return submit(() -> service.copyLocalWhitelistedPlayersToDatabase(snapshotWhitelistedPlayers));
+    }
+
+    public CompletableFuture<Boolean> copyLocalOppedPlayersToDatabase(ArrayList<OppedPlayer> oppedPlayers) {
+        ArrayList<OppedPlayer> snapshotOppedPlayers = new ArrayList<>(oppedPlayers);
+        return submit(() -> service.copyLocalOppedPlayersToDatabase(snapshotOppedPlayers));
+    }
+
+    public CompletableFuture<Boolean> copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        ArrayList<WhitelistedPlayer> snapshotLocalWhitelistedPlayers = new ArrayList<>(localWhitelistedPlayers);
+        return submit(() -> service.copyDatabaseWhitelistedPlayersToLocal(snapshotLocalWhitelistedPlayers, dispatchAdd(onUserAdd), dispatchRemove(onUserRemove)));
+    }
+
+    public CompletableFuture<Boolean> copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        ArrayList<OppedPlayer> snapshotLocalOppedPlayers = new ArrayList<>(localOppedPlayers);
+        return submit(() -> service.copyDatabaseOppedPlayersToLocal(snapshotLocalOppedPlayers, dispatchAdd(onUserAdd), dispatchRemove(onUserRemove)));
+    }
+
+    public CompletableFuture<Boolean> copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        ArrayList<WhitelistedPlayer> snapshotLocalWhitelistedPlayers = new ArrayList<>(localWhitelistedPlayers);
+        return submit(() -> service.copyDatabaseWhitelistedPlayersToLocal(snapshotLocalWhitelistedPlayers, dispatchAdd(onUserAdd), dispatchRemove(onUserRemove), watermark));
+    }
+
+    public CompletableFuture<Boolean> copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        ArrayList<OppedPlayer> snapshotLocalOppedPlayers = new ArrayList<>(localOppedPlayers);
+        return submit(() -> service.copyDatabaseOppedPlayersToLocal(snapshotLocalOppedPlayers, dispatchAdd(onUserAdd), dispatchRemove(onUserRemove), watermark));
+    }
+
+    public CompletableFuture<Boolean> syncAll(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, ArrayList<OppedPlayer> localOppedPlayers,
+                                              IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove) {
+        ArrayList<WhitelistedPlayer> snapshotLocalWhitelistedPlayers = new ArrayList<>(localWhitelistedPlayers);
+        ArrayList<OppedPlayer> snapshotLocalOppedPlayers = new ArrayList<>(localOppedPlayers);
+        return submit(() -> service.syncAll(snapshotLocalWhitelistedPlayers, snapshotLocalOppedPlayers,
+                dispatchAdd(onWhitelistAdd), dispatchRemove(onWhitelistRemove), dispatchAdd(onOpAdd), dispatchRemove(onOpRemove)));
+    }
+
+    // Two-way syncing functions
+    public CompletableFuture<Boolean> mergeWhitelistedPlayers(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        ArrayList<WhitelistedPlayer> snapshotLocalWhitelistedPlayers = new ArrayList<>(localWhitelistedPlayers);
+        return submit(() -> service.mergeWhitelistedPlayers(snapshotLocalWhitelistedPlayers, base, dispatchAdd(onUserAdd), dispatchRemove(onUserRemove)));
+    }
+
+    public CompletableFuture<Boolean> mergeOppedPlayers(ArrayList<OppedPlayer> localOppedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        ArrayList<OppedPlayer> snapshotLocalOppedPlayers = new ArrayList<>(localOppedPlayers);
+        return submit(() -> service.mergeOppedPlayers(snapshotLocalOppedPlayers, base, dispatchAdd(onUserAdd), dispatchRemove(onUserRemove)));
+    }
+
+    // Addition functions
+    public CompletableFuture<Boolean> addWhitelistPlayer(UUID uuid, String name) {
+        return submit(() -> service.addWhitelistPlayer(uuid, name));
+    }
+
+    public CompletableFuture<Boolean> addOppedPlayer(UUID uuid, String name) {
+        return submit(() -> service.addOppedPlayer(uuid, name));
+    }
+
+    // Removal functions
+    public CompletableFuture<Boolean> removeWhitelistPlayer(UUID uuid, String name) {
+        return submit(() -> service.removeWhitelistPlayer(uuid, name));
+    }
+
+    public CompletableFuture<Boolean> removeOppedPlayer(UUID uuid, String name) {
+        return submit(() -> service.removeOppedPlayer(uuid, name));
+    }
+
+    // Bulk addition and removal functions
+    public CompletableFuture<Map<UUID, Boolean>> addWhitelistPlayers(Collection<WhitelistedPlayer> players) {
+        ArrayList<WhitelistedPlayer> snapshotPlayers = new ArrayList<>(players);
+        return submit(() -> service.addWhitelistPlayers(snapshotPlayers));
+    }
+
+    public CompletableFuture<Map<UUID, Boolean>> removeWhitelistPlayers(Collection<WhitelistedPlayer> players) {
+        ArrayList<WhitelistedPlayer> snapshotPlayers = new ArrayList<>(players);
+        return submit(() -> service.removeWhitelistPlayers(snapshotPlayers));
+    }
+
+    public CompletableFuture<Map<UUID, Boolean>> addOppedPlayers(Collection<OppedPlayer> players) {
+        ArrayList<OppedPlayer> snapshotPlayers = new ArrayList<>(players);
+        return submit(() -> service.addOppedPlayers(snapshotPlayers));
+    }
+
+    public CompletableFuture<Map<UUID, Boolean>> removeOppedPlayers(Collection<OppedPlayer> players) {
+        ArrayList<OppedPlayer> snapshotPlayers = new ArrayList<>(players);
+        return submit(() -> service.removeOppedPlayers(snapshotPlayers));
+    }
+
+    // Bulk write functions
+    public CompletableFuture<Boolean> writeWhitelistedPlayers(Collection<WhitelistedPlayer> players) {
+        ArrayList<WhitelistedPlayer> snapshotPlayers = new ArrayList<>(players);
+        return submit(() -> service.writeWhitelistedPlayers(snapshotPlayers));
+    }
+
+    public CompletableFuture<Boolean> writeOppedPlayers(Collection<OppedPlayer> players) {
+        ArrayList<OppedPlayer> snapshotPlayers = new ArrayList<>(players);
+        return submit(() -> service.writeOppedPlayers(snapshotPlayers));
+    }
+
+    /**
+     * Waits for queued jobs, then shuts the wrapped service down.
+     */
+    public void shutdown() {
+        executor.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        service.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> job) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(job.get());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private IOnUserAdd dispatchAdd(IOnUserAdd onUserAdd) {
+        return (uuid, name) -> callbackExecutor.execute(() -> onUserAdd.call(uuid, name));
+    }
+
+    private IOnUserRemove dispatchRemove(IOnUserRemove onUserRemove) {
+        return (uuid, name) -> callbackExecutor.execute(() -> onUserRemove.call(uuid, name));
+    }
+}
@@ -0,0 +1,98 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.async;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor that limits how many jobs can be running or waiting at once.
+ *
+ * When the limit is reached {@link #execute(Runnable)} waits up to maxQueueWaitMillis for
+ * room and then throws {@link RejectedExecutionException}, so a stalled database can never
+ * pile up unbounded work behind it.
+ */
+public class BoundedExecutor implements Executor {
+
+    private final ExecutorService delegate;
+    private final Semaphore slots;
+    private final long maxQueueWaitMillis;
+
+    public BoundedExecutor(AsyncExecutorConfig config) {
+        int threads = Math.max(1, config.getThreadCount());
+        ExecutorService virtual = config.isUseVirtualThreads() ? newVirtualThreadExecutor() : null;
+
+        if (virtual != null) {
+            this.delegate = virtual;
+        } else {
+            this.delegate = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new NamedThreadFactory(config.getThreadNamePrefix()));
+        }
+
+        this.slots = new Semaphore(threads + Math.max(0, config.getQueueCapacity()));
+        this.maxQueueWaitMillis = config.getMaxQueueWaitMillis();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        boolean acquired;
+        try {
+            acquired = maxQueueWaitMillis > 0
+                    ? slots.tryAcquire(maxQueueWaitMillis, TimeUnit.MILLISECONDS)
+                    : slots.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a free WhitelistSync worker slot.", e);
+        }
+
+        if (!acquired) {
+            throw new RejectedExecutionException("WhitelistSync work queue is full.");
+        }
+
+        try {
+            delegate.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops accepting work and waits for queued jobs to finish.
+     */
+    public void shutdown(long timeoutMillis) {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                WhitelistSyncLib.LOGGER.warn("WhitelistSync workers did not finish within " + timeoutMillis + "ms, interrupting them.");
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            delegate.shutdownNow();
+        }
+    }
+
+    // Looked up reflectively so the library still targets Java 8
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            WhitelistSyncLib.LOGGER.warn("Virtual threads are not available on this JVM, falling back to platform threads.");
+            return null;
+        }
+    }
+}
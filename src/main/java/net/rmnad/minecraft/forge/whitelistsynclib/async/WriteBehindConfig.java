@@ -0,0 +1,52 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.async;
+
+import java.nio.file.Path;
+
+/**
+ * Settings for a {@link WriteBehindService}.
+ */
+public class WriteBehindConfig {
+
+    // Pending players (whitelist + op list) that trigger a flush right away
+    private int maxPendingWrites = 256;
+    // Pending writes are flushed at least this often
+    private long flushIntervalMillis = 1000;
+    // Where writes that could not be flushed on shutdown are kept until the next start, null drops them
+    private Path spillFile;
+
+    public WriteBehindConfig() {
+    }
+
+    public int getMaxPendingWrites() {
+        return maxPendingWrites;
+    }
+
+    public void setMaxPendingWrites(int maxPendingWrites) {
+        this.maxPendingWrites = Math.max(1, maxPendingWrites);
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+    }
+
+    public Path getSpillFile() {
+        return spillFile;
+    }
+
+    public void setSpillFile(Path spillFile) {
+        this.spillFile = spillFile;
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBehindConfig{" +
+                "maxPendingWrites=" + maxPendingWrites +
+                ", flushIntervalMillis=" + flushIntervalMillis +
+                ", spillFile=" + spillFile +
+                '}';
+    }
+}
@@ -0,0 +1,471 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.async;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.ServiceMetrics;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.UuidCodec;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.services.BaseService;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.MergeBase;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncWatermark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Buffers add/remove calls in front of a {@link BaseService} and writes them in batches.
+ *
+ * Repeated calls for the same player collapse into the last one, and the buffer is written with
+ * {@link BaseService#writeWhitelistedPlayers}/{@link BaseService#writeOppedPlayers} when it reaches
+ * {@link WriteBehindConfig#getMaxPendingWrites()} players or every flush interval.
+ * Add/remove return true once the write is queued; failed flushes are retried on the next one.
+ * Players without a name are refused with false, the batched writes can't store them, and so are
+ * names with a line break, which the spill file can't hold.
+ *
+ * Reads and syncs flush first, so they never see the database without this server's own writes.
+ * On shutdown the buffer is flushed, and whatever can't be written is saved to the spill file
+ * and replayed by the next initializeDatabase. A crash can still lose up to one flush interval.
+ */
+public class WriteBehindService implements BaseService {
+
+    private static final String WHITELIST = "whitelist";
+    private static final String OP = "op";
+
+    private final BaseService service;
+    private final WriteBehindConfig config;
+    private final ScheduledExecutorService scheduler;
+
+    // Guards the pending maps, held only to swap or update them
+    private final Object lock = new Object();
+    // Serializes flushes so batches reach the database in the order they were taken
+    private final Object flushLock = new Object();
+
+    private LinkedHashMap<UUID, WhitelistedPlayer> pendingWhitelist = new LinkedHashMap<>();
+    private LinkedHashMap<UUID, OppedPlayer> pendingOps = new LinkedHashMap<>();
+
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+
+    public WriteBehindService(BaseService service) {
+        this(service, new WriteBehindConfig());
+    }
+
+    public WriteBehindService(BaseService service, WriteBehindConfig config) {
+        this.service = service;
+        this.config = config;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("WhitelistSync-WriteBehind"));
+        this.scheduler.scheduleWithFixedDelay(this::flush, config.getFlushIntervalMillis(), config.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public BaseService getService() {
+        return service;
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pendingWhitelist.size() + pendingOps.size();
+        }
+    }
+
+    /**
+     * Writes everything queued so far.
+     * @return false if some writes failed, they stay queued for the next flush
+     */
+    public boolean flush() {
+        synchronized (flushLock) {
+            LinkedHashMap<UUID, WhitelistedPlayer> whitelist;
+            LinkedHashMap<UUID, OppedPlayer> ops;
+            synchronized (lock) {
+                whitelist = pendingWhitelist;
+                ops = pendingOps;
+                pendingWhitelist = new LinkedHashMap<>();
+                pendingOps = new LinkedHashMap<>();
+            }
+
+            boolean success = true;
+
+            if (!whitelist.isEmpty() && !write(() -> service.writeWhitelistedPlayers(whitelist.values()))) {
+                synchronized (lock) {
+                    // Anything queued meanwhile is newer and wins
+                    whitelist.forEach(pendingWhitelist::putIfAbsent);
+                }
+                success = false;
+            }
+
+            if (!ops.isEmpty() && !write(() -> service.writeOppedPlayers(ops.values()))) {
+                synchronized (lock) {
+                    ops.forEach(pendingOps::putIfAbsent);
+                }
+                success = false;
+            }
+
+            if (success && (!whitelist.isEmpty() || !ops.isEmpty())) {
+                WhitelistSyncLib.LOGGER.debug("Flushed {} whitelist and {} op writes.", whitelist.size(), ops.size());
+            }
+            return success;
+        }
+    }
+
+    @Override
+    public boolean initializeDatabase() {
+        boolean success = service.initializeDatabase();
+        if (success) {
+            replaySpillFile();
+        }
+        return success;
+    }
+
+    @Override
+    public boolean requiresSyncing() {
+        return service.requiresSyncing();
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
+        flush();
+        return service.getWhitelistedPlayersFromDatabase();
+    }
+
+    @Override
+    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+        flush();
+        return service.getOppedPlayersFromDatabase();
+    }
+
+    @Override
+    public boolean streamWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        flush();
+        return service.streamWhitelistedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean streamOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        flush();
+        return service.streamOppedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean streamAllWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        flush();
+        return service.streamAllWhitelistedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean streamAllOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        flush();
+        return service.streamAllOppedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean copyLocalWhitelistedPlayersToDatabase(ArrayList<WhitelistedPlayer> whitelistedPlayers) {
+        flush();
+        return service.copyLocalWhitelistedPlayersToDatabase(whitelistedPlayers);
+    }
+
+    @Override
+    public boolean copyLocalOppedPlayersToDatabase(ArrayList<OppedPlayer> oppedPlayers) {
+        flush();
+        return service.copyLocalOppedPlayersToDatabase(oppedPlayers);
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        flush();
+        return service.copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onUserAdd, onUserRemove);
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        flush();
+        return service.copyDatabaseOppedPlayersToLocal(localOppedPlayers, onUserAdd, onUserRemove);
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        flush();
+        return service.copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onUserAdd, onUserRemove, watermark);
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        flush();
+        return service.copyDatabaseOppedPlayersToLocal(localOppedPlayers, onUserAdd, onUserRemove, watermark);
+    }
+
+    @Override
+    public boolean syncAll(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, ArrayList<OppedPlayer> localOppedPlayers,
+                           IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove) {
+        flush();
+        return service.syncAll(localWhitelistedPlayers, localOppedPlayers, onWhitelistAdd, onWhitelistRemove, onOpAdd, onOpRemove);
+    }
+
+    @Override
+    public boolean mergeWhitelistedPlayers(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        flush();
+        return service.mergeWhitelistedPlayers(localWhitelistedPlayers, base, onUserAdd, onUserRemove);
+    }
+
+    @Override
+    public boolean mergeOppedPlayers(ArrayList<OppedPlayer> localOppedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        flush();
+        return service.mergeOppedPlayers(localOppedPlayers, base, onUserAdd, onUserRemove);
+    }
+
+    @Override
+    public boolean addWhitelistPlayer(UUID uuid, String name) {
+        if (closed) {
+            return service.addWhitelistPlayer(uuid, name);
+        }
+        return queueWhitelist(new WhitelistedPlayer(uuid, name, true));
+    }
+
+    @Override
+    public boolean addOppedPlayer(UUID uuid, String name) {
+        if (closed) {
+            return service.addOppedPlayer(uuid, name);
+        }
+        return queueOp(new OppedPlayer(uuid, name, true));
+    }
+
+    @Override
+    public boolean removeWhitelistPlayer(UUID uuid, String name) {
+        if (closed) {
+            return service.removeWhitelistPlayer(uuid, name);
+        }
+        return queueWhitelist(new WhitelistedPlayer(uuid, name, false));
+    }
+
+    @Override
+    public boolean removeOppedPlayer(UUID uuid, String name) {
+        if (closed) {
+            return service.removeOppedPlayer(uuid, name);
+        }
+        return queueOp(new OppedPlayer(uuid, name, false));
+    }
+
+    @Override
+    public boolean writeWhitelistedPlayers(Collection<WhitelistedPlayer> players) {
+        if (closed) {
+            return service.writeWhitelistedPlayers(players);
+        }
+        boolean queued = true;
+        for (WhitelistedPlayer player : players) {
+            queued &= queueWhitelist(player);
+        }
+        return queued;
+    }
+
+    @Override
+    public boolean writeOppedPlayers(Collection<OppedPlayer> players) {
+        if (closed) {
+            return service.writeOppedPlayers(players);
+        }
+        boolean queued = true;
+        for (OppedPlayer player : players) {
+            queued &= queueOp(player);
+        }
+        return queued;
+    }
+
+    @Override
+    public boolean tryAcquireSyncLease(String nodeId, long leaseMillis) {
+        return service.tryAcquireSyncLease(nodeId, leaseMillis);
+    }
+
+    @Override
+    public long publishChangeDigest() {
+        // The digest should already cover this server's own writes
+        flush();
+        return service.publishChangeDigest();
+    }
+
+    @Override
+    public long readChangeDigest() {
+        return service.readChangeDigest();
+    }
+
+    @Override
+    public void setMetrics(ServiceMetrics metrics) {
+        service.setMetrics(metrics);
+    }
+
+    /**
+     * Stops the flush thread, writes what is left and shuts the wrapped service down.
+     * Writes that still fail are saved to the spill file.
+     */
+    @Override
+    public void shutdown() {
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(config.getFlushIntervalMillis() + 5000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!flush()) {
+            spill();
+        }
+        service.shutdown();
+    }
+
+    private boolean queueWhitelist(WhitelistedPlayer player) {
+        if (!player.hasUuid()) {
+            return false;
+        }
+        if (!isValidName(player.getName())) {
+            WhitelistSyncLib.LOGGER.warn("Refusing queued whitelist write for " + player.getUuid() + " with invalid name " + player.getName() + ".");
+            return false;
+        }
+        int pending;
+        synchronized (lock) {
+            pendingWhitelist.put(player.toUUID(), player);
+            pending = pendingWhitelist.size() + pendingOps.size();
+        }
+        flushIfFull(pending);
+        return true;
+    }
+
+    private boolean queueOp(OppedPlayer player) {
+        if (!player.hasUuid()) {
+            return false;
+        }
+        if (!isValidName(player.getName())) {
+            WhitelistSyncLib.LOGGER.warn("Refusing queued op write for " + player.getUuid() + " with invalid name " + player.getName() + ".");
+            return false;
+        }
+        int pending;
+        synchronized (lock) {
+            pendingOps.put(player.toUUID(), player);
+            pending = pendingWhitelist.size() + pendingOps.size();
+        }
+        flushIfFull(pending);
+        return true;
+    }
+
+    private static boolean isValidName(String name) {
+        return name != null && name.indexOf('\n') < 0 && name.indexOf('\r') < 0;
+    }
+
+    private void flushIfFull(int pending) {
+        // One queued flush picks up everything, no need to queue another per write
+        if (pending >= config.getMaxPendingWrites() && flushQueued.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    flushQueued.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down, the final flush takes care of it
+                flushQueued.set(false);
+            }
+        }
+    }
+
+    private static boolean write(BooleanSupplier write) {
+        try {
+            return write.getAsBoolean();
+        } catch (RuntimeException e) {
+            WhitelistSyncLib.LOGGER.error("Failed to flush queued writes.");
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    // One line per player: list|active|uuid|name
+    private void spill() {
+        Path file = config.getSpillFile();
+        List<String> lines = new ArrayList<>();
+        synchronized (lock) {
+            for (WhitelistedPlayer player : pendingWhitelist.values()) {
+                lines.add(WHITELIST + "|" + player.isWhitelisted() + "|" + player.getUuid() + "|" + player.getName());
+            }
+            for (OppedPlayer player : pendingOps.values()) {
+                lines.add(OP + "|" + player.isOp() + "|" + player.getUuid() + "|" + player.getName());
+            }
+        }
+
+        if (file == null) {
+            WhitelistSyncLib.LOGGER.error("Dropped " + lines.size() + " queued writes that could not be flushed, no spill file is configured.");
+            return;
+        }
+
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            WhitelistSyncLib.LOGGER.warn("Saved " + lines.size() + " queued writes to " + file + ", they will be written on the next start.");
+        } catch (IOException e) {
+            WhitelistSyncLib.LOGGER.error("Failed to save queued writes to " + file);
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    private void replaySpillFile() {
+        Path file = config.getSpillFile();
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            WhitelistSyncLib.LOGGER.error("Failed to read queued writes from " + file);
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+            return;
+        }
+
+        int replayed = 0;
+        synchronized (lock) {
+            for (String line : lines) {
+                String[] parts = line.split("\\|", 4);
+                if (parts.length != 4 || !UuidCodec.isCanonical(parts[2])) {
+                    WhitelistSyncLib.LOGGER.warn("Skipping malformed queued write: " + line);
+                    continue;
+                }
+                UUID uuid = new UUID(UuidCodec.parseMost(parts[2]), UuidCodec.parseLeast(parts[2]));
+                boolean active = Boolean.parseBoolean(parts[1]);
+                // Writes made since startup are newer than the spilled ones
+                if (WHITELIST.equals(parts[0])) {
+                    pendingWhitelist.putIfAbsent(uuid, new WhitelistedPlayer(uuid, parts[3], active));
+                } else if (OP.equals(parts[0])) {
+                    pendingOps.putIfAbsent(uuid, new OppedPlayer(uuid, parts[3], active));
+                }
+                replayed++;
+            }
+        }
+
+        // Only forget the file once its writes are in the database
+        if (flush()) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                WhitelistSyncLib.LOGGER.error("Failed to delete " + file);
+                WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+            }
+            WhitelistSyncLib.LOGGER.info("Replayed " + replayed + " queued writes from " + file + ".");
+        }
+    }
+
+}
@@ -0,0 +1,331 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.cache;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.ServiceMetrics;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.services.BaseService;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.MergeBase;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncWatermark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Wraps a {@link BaseService} and keeps the synced whitelist and op list in memory, so
+ * {@link #isWhitelisted(UUID)} and {@link #isOp(UUID)} can be answered without JDBC or allocation.
+ *
+ * The cache follows the sync methods: a copyDatabase*ToLocal call resets it to the local list it
+ * was given plus the changes the sync applied, and successful add/remove calls update it directly.
+ */
+public class CachedService implements BaseService {
+
+    private final BaseService service;
+
+    private final UuidSet whitelist = new UuidSet();
+    private final UuidSet ops = new UuidSet();
+
+    public CachedService(BaseService service) {
+        this.service = service;
+    }
+
+    public BaseService getService() {
+        return service;
+    }
+
+    // Lookup functions
+    public boolean isWhitelisted(UUID uuid) {
+        return whitelist.contains(uuid);
+    }
+
+    public boolean isOp(UUID uuid) {
+        return ops.contains(uuid);
+    }
+
+    public int getWhitelistedCount() {
+        return whitelist.size();
+    }
+
+    public int getOppedCount() {
+        return ops.size();
+    }
+
+    @Override
+    public boolean initializeDatabase() {
+        return service.initializeDatabase();
+    }
+
+    @Override
+    public boolean requiresSyncing() {
+        return service.requiresSyncing();
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
+        return service.getWhitelistedPlayersFromDatabase();
+    }
+
+    @Override
+    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+        return service.getOppedPlayersFromDatabase();
+    }
+
+    @Override
+    public boolean streamWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return service.streamWhitelistedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean streamOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return service.streamOppedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean streamAllWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return service.streamAllWhitelistedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean streamAllOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return service.streamAllOppedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean copyLocalWhitelistedPlayersToDatabase(ArrayList<WhitelistedPlayer> whitelistedPlayers) {
+        boolean success = service.copyLocalWhitelistedPlayersToDatabase(whitelistedPlayers);
+        if (success) {
+            for (WhitelistedPlayer player : whitelistedPlayers) {
+                if (player.hasUuid()) {
+                    whitelist.add(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+                }
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean copyLocalOppedPlayersToDatabase(ArrayList<OppedPlayer> oppedPlayers) {
+        boolean success = service.copyLocalOppedPlayersToDatabase(oppedPlayers);
+        if (success) {
+            for (OppedPlayer player : oppedPlayers) {
+                if (player.hasUuid()) {
+                    ops.add(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+                }
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onUserAdd, onUserRemove, null);
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        whitelist.replaceWith(whitelistUuids(localWhitelistedPlayers), localWhitelistedPlayers.size());
+        return service.copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers,
+                (uuid, name) -> {
+                    whitelist.add(uuid);
+                    onUserAdd.call(uuid, name);
+                },
+                (uuid, name) -> {
+                    whitelist.remove(uuid);
+                    onUserRemove.call(uuid, name);
+                },
+                watermark);
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return copyDatabaseOppedPlayersToLocal(localOppedPlayers, onUserAdd, onUserRemove, null);
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        ops.replaceWith(oppedUuids(localOppedPlayers), localOppedPlayers.size());
+        return service.copyDatabaseOppedPlayersToLocal(localOppedPlayers,
+                (uuid, name) -> {
+                    ops.add(uuid);
+                    onUserAdd.call(uuid, name);
+                },
+                (uuid, name) -> {
+                    ops.remove(uuid);
+                    onUserRemove.call(uuid, name);
+                },
+                watermark);
+    }
+
+    @Override
+    public boolean syncAll(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, ArrayList<OppedPlayer> localOppedPlayers,
+                           IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove) {
+        whitelist.replaceWith(whitelistUuids(localWhitelistedPlayers), localWhitelistedPlayers.size());
+        ops.replaceWith(oppedUuids(localOppedPlayers), localOppedPlayers.size());
+        return service.syncAll(localWhitelistedPlayers, localOppedPlayers,
+                (uuid, name) -> {
+                    whitelist.add(uuid);
+                    onWhitelistAdd.call(uuid, name);
+                },
+                (uuid, name) -> {
+                    whitelist.remove(uuid);
+                    onWhitelistRemove.call(uuid, name);
+                },
+                (uuid, name) -> {
+                    ops.add(uuid);
+                    onOpAdd.call(uuid, name);
+                },
+                (uuid, name) -> {
+                    ops.remove(uuid);
+                    onOpRemove.call(uuid, name);
+                });
+    }
+
+    // Local changes the merge writes out are already in the local list, so only the callbacks move the cache.
+    @Override
+    public boolean mergeWhitelistedPlayers(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        whitelist.replaceWith(whitelistUuids(localWhitelistedPlayers), localWhitelistedPlayers.size());
+        return service.mergeWhitelistedPlayers(localWhitelistedPlayers, base,
+                (uuid, name) -> {
+                    whitelist.add(uuid);
+                    onUserAdd.call(uuid, name);
+                },
+                (uuid, name) -> {
+                    whitelist.remove(uuid);
+                    onUserRemove.call(uuid, name);
+                });
+    }
+
+    @Override
+    public boolean mergeOppedPlayers(ArrayList<OppedPlayer> localOppedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        ops.replaceWith(oppedUuids(localOppedPlayers), localOppedPlayers.size());
+        return service.mergeOppedPlayers(localOppedPlayers, base,
+                (uuid, name) -> {
+                    ops.add(uuid);
+                    onUserAdd.call(uuid, name);
+                },
+                (uuid, name) -> {
+                    ops.remove(uuid);
+                    onUserRemove.call(uuid, name);
+                });
+    }
+
+    @Override
+    public boolean addWhitelistPlayer(UUID uuid, String name) {
+        boolean success = service.addWhitelistPlayer(uuid, name);
+        if (success) {
+            whitelist.add(uuid);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean addOppedPlayer(UUID uuid, String name) {
+        boolean success = service.addOppedPlayer(uuid, name);
+        if (success) {
+            ops.add(uuid);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean removeWhitelistPlayer(UUID uuid, String name) {
+        boolean success = service.removeWhitelistPlayer(uuid, name);
+        if (success) {
+            whitelist.remove(uuid);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean removeOppedPlayer(UUID uuid, String name) {
+        boolean success = service.removeOppedPlayer(uuid, name);
+        if (success) {
+            ops.remove(uuid);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean writeWhitelistedPlayers(Collection<WhitelistedPlayer> players) {
+        boolean success = service.writeWhitelistedPlayers(players);
+        if (success) {
+            for (WhitelistedPlayer player : players) {
+                if (!player.hasUuid()) {
+                    continue;
+                }
+                if (player.isWhitelisted()) {
+                    whitelist.add(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+                } else {
+                    whitelist.remove(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+                }
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean writeOppedPlayers(Collection<OppedPlayer> players) {
+        boolean success = service.writeOppedPlayers(players);
+        if (success) {
+            for (OppedPlayer player : players) {
+                if (!player.hasUuid()) {
+                    continue;
+                }
+                if (player.isOp()) {
+                    ops.add(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+                } else {
+                    ops.remove(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+                }
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean tryAcquireSyncLease(String nodeId, long leaseMillis) {
+        return service.tryAcquireSyncLease(nodeId, leaseMillis);
+    }
+
+    @Override
+    public long publishChangeDigest() {
+        return service.publishChangeDigest();
+    }
+
+    @Override
+    public long readChangeDigest() {
+        return service.readChangeDigest();
+    }
+
+    @Override
+    public void setMetrics(ServiceMetrics metrics) {
+        service.setMetrics(metrics);
+    }
+
+    @Override
+    public void shutdown() {
+        service.shutdown();
+    }
+
+    private static Collection<UUID> whitelistUuids(Collection<WhitelistedPlayer> players) {
+        ArrayList<UUID> uuids = new ArrayList<>(players.size());
+        for (WhitelistedPlayer player : players) {
+            if (player.hasUuid()) {
+                uuids.add(player.toUUID());
+            }
+        }
+        return uuids;
+    }
+
+    private static Collection<UUID> oppedUuids(Collection<OppedPlayer> players) {
+        ArrayList<UUID> uuids = new ArrayList<>(players.size());
+        for (OppedPlayer player : players) {
+            if (player.hasUuid()) {
+                uuids.add(player.toUUID());
+            }
+        }
+        return uuids;
+    }
+}
@@ -0,0 +1,397 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.cache;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.ServiceMetrics;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.services.BaseService;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.MergeBase;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SnapshotFile;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncDiff;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncWatermark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Wraps a {@link BaseService} and keeps a {@link SnapshotFile} of the synced lists, so the next start
+ * doesn't have to wait for the database.
+ *
+ * On startup call {@link #restore} before touching the database: it adds the players from the last
+ * snapshot to the local lists right away. Then initialize and sync as usual, e.g. through an
+ * AsyncService so the server doesn't block on it. The snapshot follows the local lists through the
+ * sync callbacks and successful writes, and is saved after every sync that changed it and on shutdown.
+ */
+public class SnapshotService implements BaseService {
+
+    private final BaseService service;
+    private final SnapshotFile snapshot;
+
+    // Guards both maps and the dirty flag
+    private final Object lock = new Object();
+    private LinkedHashMap<UUID, String> whitelist = new LinkedHashMap<>();
+    private LinkedHashMap<UUID, String> ops = new LinkedHashMap<>();
+    private boolean dirty = false;
+
+    public SnapshotService(BaseService service, SnapshotFile snapshot) {
+        this.service = service;
+        this.snapshot = snapshot;
+    }
+
+    public BaseService getService() {
+        return service;
+    }
+
+    public long getRevision() {
+        return snapshot.getRevision();
+    }
+
+    /**
+     * Adds the players from the snapshot file that are missing from the local lists. Nothing is removed:
+     * like a sync, only the database can take a player off, which the next sync does.
+     * @return false if there was no usable snapshot
+     */
+    public boolean restore(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onWhitelistAdd, IOnUserAdd onOpAdd) {
+        long startTime = System.nanoTime();
+
+        SnapshotFile.Snapshot loaded = snapshot.load();
+        if (loaded == null) {
+            return false;
+        }
+
+        LinkedHashMap<UUID, String> restoredWhitelist = whitelistMap(localWhitelistedPlayers);
+        SyncDiff whitelistDiff = SyncDiff.forWhitelist(localWhitelistedPlayers);
+        for (WhitelistedPlayer player : loaded.getWhitelist()) {
+            whitelistDiff.accept(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits(), player.getName(), true);
+        }
+        whitelistDiff.apply(trackAdd(restoredWhitelist, onWhitelistAdd), (uuid, name) -> {});
+
+        LinkedHashMap<UUID, String> restoredOps = opMap(localOppedPlayers);
+        SyncDiff opDiff = SyncDiff.forOps(localOppedPlayers);
+        for (OppedPlayer player : loaded.getOps()) {
+            opDiff.accept(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits(), player.getName(), true);
+        }
+        opDiff.apply(trackAdd(restoredOps, onOpAdd), (uuid, name) -> {});
+
+        synchronized (lock) {
+            whitelist = restoredWhitelist;
+            ops = restoredOps;
+        }
+
+        WhitelistSyncLib.LOGGER.info("Restored snapshot revision {} | Took {}ms | Added {} whitelisted and {} opped players.",
+                loaded.getRevision(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), whitelistDiff.size(), opDiff.size());
+        return true;
+    }
+
+    /**
+     * Writes the snapshot if anything changed since the last save.
+     */
+    public boolean save() {
+        LinkedHashMap<UUID, String> whitelistCopy;
+        LinkedHashMap<UUID, String> opsCopy;
+        synchronized (lock) {
+            if (!dirty) {
+                return true;
+            }
+            whitelistCopy = new LinkedHashMap<>(whitelist);
+            opsCopy = new LinkedHashMap<>(ops);
+            dirty = false;
+        }
+
+        if (!snapshot.save(whitelistCopy, opsCopy)) {
+            synchronized (lock) {
+                dirty = true;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean initializeDatabase() {
+        return service.initializeDatabase();
+    }
+
+    @Override
+    public boolean requiresSyncing() {
+        return service.requiresSyncing();
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
+        return service.getWhitelistedPlayersFromDatabase();
+    }
+
+    @Override
+    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+        return service.getOppedPlayersFromDatabase();
+    }
+
+    @Override
+    public boolean streamWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return service.streamWhitelistedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean streamOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return service.streamOppedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean streamAllWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return service.streamAllWhitelistedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean streamAllOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return service.streamAllOppedPlayersFromDatabase(consumer);
+    }
+
+    @Override
+    public boolean copyLocalWhitelistedPlayersToDatabase(ArrayList<WhitelistedPlayer> whitelistedPlayers) {
+        return service.copyLocalWhitelistedPlayersToDatabase(whitelistedPlayers);
+    }
+
+    @Override
+    public boolean copyLocalOppedPlayersToDatabase(ArrayList<OppedPlayer> oppedPlayers) {
+        return service.copyLocalOppedPlayersToDatabase(oppedPlayers);
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onUserAdd, onUserRemove, null);
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        LinkedHashMap<UUID, String> synced = whitelistMap(localWhitelistedPlayers);
+        boolean success = service.copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers,
+                trackAdd(synced, onUserAdd), trackRemove(synced, onUserRemove), watermark);
+        if (success) {
+            synced(synced, null);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return copyDatabaseOppedPlayersToLocal(localOppedPlayers, onUserAdd, onUserRemove, null);
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        LinkedHashMap<UUID, String> synced = opMap(localOppedPlayers);
+        boolean success = service.copyDatabaseOppedPlayersToLocal(localOppedPlayers,
+                trackAdd(synced, onUserAdd), trackRemove(synced, onUserRemove), watermark);
+        if (success) {
+            synced(null, synced);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean syncAll(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, ArrayList<OppedPlayer> localOppedPlayers,
+                           IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove) {
+        LinkedHashMap<UUID, String> syncedWhitelist = whitelistMap(localWhitelistedPlayers);
+        LinkedHashMap<UUID, String> syncedOps = opMap(localOppedPlayers);
+        boolean success = service.syncAll(localWhitelistedPlayers, localOppedPlayers,
+                trackAdd(syncedWhitelist, onWhitelistAdd), trackRemove(syncedWhitelist, onWhitelistRemove),
+                trackAdd(syncedOps, onOpAdd), trackRemove(syncedOps, onOpRemove));
+        if (success) {
+            synced(syncedWhitelist, syncedOps);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean mergeWhitelistedPlayers(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        LinkedHashMap<UUID, String> synced = whitelistMap(localWhitelistedPlayers);
+        boolean success = service.mergeWhitelistedPlayers(localWhitelistedPlayers, base, trackAdd(synced, onUserAdd), trackRemove(synced, onUserRemove));
+        if (success) {
+            synced(synced, null);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean mergeOppedPlayers(ArrayList<OppedPlayer> localOppedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        LinkedHashMap<UUID, String> synced = opMap(localOppedPlayers);
+        boolean success = service.mergeOppedPlayers(localOppedPlayers, base, trackAdd(synced, onUserAdd), trackRemove(synced, onUserRemove));
+        if (success) {
+            synced(null, synced);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean addWhitelistPlayer(UUID uuid, String name) {
+        boolean success = service.addWhitelistPlayer(uuid, name);
+        if (success) {
+            synchronized (lock) {
+                whitelist.put(uuid, name);
+                dirty = true;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean addOppedPlayer(UUID uuid, String name) {
+        boolean success = service.addOppedPlayer(uuid, name);
+        if (success) {
+            synchronized (lock) {
+                ops.put(uuid, name);
+                dirty = true;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean removeWhitelistPlayer(UUID uuid, String name) {
+        boolean success = service.removeWhitelistPlayer(uuid, name);
+        if (success) {
+            synchronized (lock) {
+                whitelist.remove(uuid);
+                dirty = true;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean removeOppedPlayer(UUID uuid, String name) {
+        boolean success = service.removeOppedPlayer(uuid, name);
+        if (success) {
+            synchronized (lock) {
+                ops.remove(uuid);
+                dirty = true;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean writeWhitelistedPlayers(Collection<WhitelistedPlayer> players) {
+        boolean success = service.writeWhitelistedPlayers(players);
+        if (success) {
+            synchronized (lock) {
+                for (WhitelistedPlayer player : players) {
+                    if (!player.hasUuid()) {
+                        continue;
+                    }
+                    if (player.isWhitelisted()) {
+                        whitelist.put(player.toUUID(), player.getName());
+                    } else {
+                        whitelist.remove(player.toUUID());
+                    }
+                }
+                dirty = true;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean writeOppedPlayers(Collection<OppedPlayer> players) {
+        boolean success = service.writeOppedPlayers(players);
+        if (success) {
+            synchronized (lock) {
+                for (OppedPlayer player : players) {
+                    if (!player.hasUuid()) {
+                        continue;
+                    }
+                    if (player.isOp()) {
+                        ops.put(player.toUUID(), player.getName());
+                    } else {
+                        ops.remove(player.toUUID());
+                    }
+                }
+                dirty = true;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean tryAcquireSyncLease(String nodeId, long leaseMillis) {
+        return service.tryAcquireSyncLease(nodeId, leaseMillis);
+    }
+
+    @Override
+    public long publishChangeDigest() {
+        return service.publishChangeDigest();
+    }
+
+    @Override
+    public long readChangeDigest() {
+        return service.readChangeDigest();
+    }
+
+    @Override
+    public void setMetrics(ServiceMetrics metrics) {
+        service.setMetrics(metrics);
+    }
+
+    @Override
+    public void shutdown() {
+        save();
+        service.shutdown();
+    }
+
+    // Takes over the lists a sync left behind, null keeps the current one, then saves if they changed.
+    private void synced(LinkedHashMap<UUID, String> syncedWhitelist, LinkedHashMap<UUID, String> syncedOps) {
+        synchronized (lock) {
+            if (syncedWhitelist != null && !syncedWhitelist.equals(whitelist)) {
+                whitelist = syncedWhitelist;
+                dirty = true;
+            }
+            if (syncedOps != null && !syncedOps.equals(ops)) {
+                ops = syncedOps;
+                dirty = true;
+            }
+        }
+        save();
+    }
+
+    // The map follows the callback once it returned, so a failed callback leaves it as the local list is
+    private static IOnUserAdd trackAdd(LinkedHashMap<UUID, String> players, IOnUserAdd onUserAdd) {
+        return (uuid, name) -> {
+            onUserAdd.call(uuid, name);
+            players.put(uuid, name);
+        };
+    }
+
+    private static IOnUserRemove trackRemove(LinkedHashMap<UUID, String> players, IOnUserRemove onUserRemove) {
+        return (uuid, name) -> {
+            onUserRemove.call(uuid, name);
+            players.remove(uuid);
+        };
+    }
+
+    private static LinkedHashMap<UUID, String> whitelistMap(Collection<WhitelistedPlayer> players) {
+        LinkedHashMap<UUID, String> map = new LinkedHashMap<>();
+        for (WhitelistedPlayer player : players) {
+            if (player.hasUuid()) {
+                map.put(player.toUUID(), player.getName());
+            }
+        }
+        return map;
+    }
+
+    private static LinkedHashMap<UUID, String> opMap(Collection<OppedPlayer> players) {
+        LinkedHashMap<UUID, String> map = new LinkedHashMap<>();
+        for (OppedPlayer player : players) {
+            if (player.hasUuid()) {
+                map.put(player.toUUID(), player.getName());
+            }
+        }
+        return map;
+    }
+}
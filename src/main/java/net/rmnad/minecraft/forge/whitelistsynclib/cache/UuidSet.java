@@ -0,0 +1,245 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Set of UUIDs stored as pairs of longs in open addressed arrays.
+ *
+ * Lookups don't allocate and normally don't take a lock: they read optimistically and only
+ * fall back to a read lock if a writer was active at the same time. Writes are serialized.
+ */
+public class UuidSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+
+    // Swapped as a whole on resize so a reader always sees arrays of the same length
+    private volatile Table table = new Table(MIN_CAPACITY);
+    private int size = 0;
+
+    public boolean contains(UUID uuid) {
+        return contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean contains(long most, long least) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            boolean found = table.contains(most, least);
+            if (lock.validate(stamp)) {
+                return found;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return table.contains(most, least);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean add(UUID uuid) {
+        return add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean add(long most, long least) {
+        long stamp = lock.writeLock();
+        try {
+            if ((size + 1) * 2 > table.capacity()) {
+                table = table.resize(table.capacity() * 2);
+            }
+            if (table.insert(most, least)) {
+                size++;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(UUID uuid) {
+        return remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean remove(long most, long least) {
+        long stamp = lock.writeLock();
+        try {
+            if (table.delete(most, least)) {
+                size--;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Replaces the whole content, readers see either the old or the new set.
+     */
+    public void replaceWith(Iterable<UUID> uuids, int expectedSize) {
+        Table fresh = new Table(capacityFor(expectedSize));
+        int count = 0;
+        for (UUID uuid : uuids) {
+            if (fresh.insert(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits())) {
+                count++;
+            }
+            if (count * 2 > fresh.capacity()) {
+                fresh = fresh.resize(fresh.capacity() * 2);
+            }
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            table = fresh;
+            size = count;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        replaceWith(java.util.Collections.emptyList(), 0);
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Copy of the current content, in no particular order.
+     */
+    public List<UUID> toList() {
+        long stamp = lock.readLock();
+        try {
+            Table current = table;
+            List<UUID> uuids = new ArrayList<>(size);
+            for (int i = 0; i < current.used.length; i++) {
+                if (current.used[i]) {
+                    uuids.add(new UUID(current.most[i], current.least[i]));
+                }
+            }
+            return uuids;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // Murmur3 finalizer over both halves
+    private static int hash(long most, long least) {
+        long h = most ^ (least * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Linear probing table, always at most half full so probes stay short.
+     */
+    private static final class Table {
+        private final long[] most;
+        private final long[] least;
+        private final boolean[] used;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.most = new long[capacity];
+            this.least = new long[capacity];
+            this.used = new boolean[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return used.length;
+        }
+
+        private boolean contains(long m, long l) {
+            int slot = hash(m, l) & mask;
+            // Bounded so a torn optimistic read can never spin forever
+            for (int i = 0; i <= mask; i++) {
+                if (!used[slot]) {
+                    return false;
+                }
+                if (most[slot] == m && least[slot] == l) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        private boolean insert(long m, long l) {
+            int slot = hash(m, l) & mask;
+            while (used[slot]) {
+                if (most[slot] == m && least[slot] == l) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            most[slot] = m;
+            least[slot] = l;
+            used[slot] = true;
+            return true;
+        }
+
+        private boolean delete(long m, long l) {
+            int slot = hash(m, l) & mask;
+            while (used[slot]) {
+                if (most[slot] == m && least[slot] == l) {
+                    shiftBack(slot);
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        // Backward shift deletion keeps probe chains intact without tombstones
+        private void shiftBack(int hole) {
+            int slot = hole;
+            while (true) {
+                slot = (slot + 1) & mask;
+                if (!used[slot]) {
+                    break;
+                }
+                int home = hash(most[slot], least[slot]) & mask;
+                // Move the entry into the hole if its home slot is not between the hole and its position
+                if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                    most[hole] = most[slot];
+                    least[hole] = least[slot];
+                    hole = slot;
+                }
+            }
+            used[hole] = false;
+        }
+
+        private Table resize(int capacity) {
+            Table bigger = new Table(capacity);
+            for (int i = 0; i < used.length; i++) {
+                if (used[i]) {
+                    bigger.insert(most[i], least[i]);
+                }
+            }
+            return bigger;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Default {@link ServiceMetrics} that keeps counters and latency histograms in memory.
+ *
+ * Everything is recorded with atomic adds; the per operation stats are created up front so
+ * recording never allocates or locks. Read the values directly or export them with {@link MetricsJmxExporter}.
+ */
+public class InMemoryMetrics implements ServiceMetrics {
+
+    private final Map<Operation, OperationStats> operations;
+    private final ConcurrentHashMap<String, LatencyHistogram> connectionAcquire = new ConcurrentHashMap<>();
+
+    public InMemoryMetrics() {
+        EnumMap<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+        this.operations = Collections.unmodifiableMap(stats);
+    }
+
+    public OperationStats get(Operation operation) {
+        return operations.get(operation);
+    }
+
+    public Map<Operation, OperationStats> getOperations() {
+        return operations;
+    }
+
+    // Acquire time per pool name
+    public Map<String, LatencyHistogram> getConnectionAcquire() {
+        return Collections.unmodifiableMap(connectionAcquire);
+    }
+
+    @Override
+    public void recordLatency(Operation operation, long nanos) {
+        operations.get(operation).latency.record(nanos);
+    }
+
+    @Override
+    public void recordRowsRead(Operation operation, long rows) {
+        operations.get(operation).rowsRead.add(rows);
+    }
+
+    @Override
+    public void recordRowsWritten(Operation operation, long rows) {
+        operations.get(operation).rowsWritten.add(rows);
+    }
+
+    @Override
+    public void recordError(Operation operation) {
+        operations.get(operation).errors.increment();
+    }
+
+    @Override
+    public void recordSyncDiff(Operation operation, int additions, int removals) {
+        OperationStats stats = operations.get(operation);
+        stats.additions.add(additions);
+        stats.removals.add(removals);
+    }
+
+    @Override
+    public void recordSyncSkipped(Operation operation) {
+        operations.get(operation).skipped.increment();
+    }
+
+    @Override
+    public void recordConnectionAcquire(String pool, long nanos) {
+        LatencyHistogram histogram = connectionAcquire.get(pool);
+        if (histogram == null) {
+            histogram = connectionAcquire.computeIfAbsent(pool, name -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Counters for one operation.
+     */
+    public static class OperationStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rowsRead = new LongAdder();
+        private final LongAdder rowsWritten = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder additions = new LongAdder();
+        private final LongAdder removals = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getRowsRead() {
+            return rowsRead.sum();
+        }
+
+        public long getRowsWritten() {
+            return rowsWritten.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getAdditions() {
+            return additions.sum();
+        }
+
+        public long getRemovals() {
+            return removals.sum();
+        }
+
+        public long getSkipped() {
+            return skipped.sum();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.metrics;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes an {@link InMemoryMetrics} as one MBean, by default
+ * {@code net.rmnad.whitelistsync:type=Metrics}.
+ *
+ * Attributes are named "OPERATION.stat" (e.g. SYNC_WHITELIST.p99Millis) and
+ * "pool.NAME.stat" for connection acquire times. They are read live on every request,
+ * and pools show up as soon as they hand out their first connection.
+ */
+public class MetricsJmxExporter implements DynamicMBean {
+
+    public static final String DEFAULT_OBJECT_NAME = "net.rmnad.whitelistsync:type=Metrics";
+
+    private static final String[] LATENCY_STATS = {"count", "meanMillis", "p50Millis", "p95Millis", "p99Millis", "maxMillis"};
+    private static final String[] OPERATION_STATS = {"errors", "rowsRead", "rowsWritten", "additions", "removals", "skipped"};
+
+    private final InMemoryMetrics metrics;
+    private final ObjectName objectName;
+
+    public MetricsJmxExporter(InMemoryMetrics metrics) throws MalformedObjectNameException {
+        this(metrics, DEFAULT_OBJECT_NAME);
+    }
+
+    public MetricsJmxExporter(InMemoryMetrics metrics, String objectName) throws MalformedObjectNameException {
+        this.metrics = metrics;
+        this.objectName = new ObjectName(objectName);
+    }
+
+    public boolean register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            return true;
+        } catch (JMException e) {
+            WhitelistSyncLib.LOGGER.error("Failed to register metrics MBean " + objectName);
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            WhitelistSyncLib.LOGGER.error("Failed to unregister metrics MBean " + objectName);
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        int split = attribute.lastIndexOf('.');
+        if (split > 0) {
+            String owner = attribute.substring(0, split);
+            String stat = attribute.substring(split + 1);
+
+            if (owner.startsWith("pool.")) {
+                LatencyHistogram histogram = metrics.getConnectionAcquire().get(owner.substring(5));
+                if (histogram != null) {
+                    Object value = latencyStat(histogram, stat);
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            } else {
+                Operation operation = operation(owner);
+                if (operation != null) {
+                    Object value = operationStat(metrics.get(operation), stat);
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException ignored) {
+                // Skipped, as the DynamicMBean contract allows
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            for (String stat : LATENCY_STATS) {
+                attributes.add(attributeInfo(operation.name() + "." + stat, stat));
+            }
+            for (String stat : OPERATION_STATS) {
+                attributes.add(attributeInfo(operation.name() + "." + stat, stat));
+            }
+        }
+        for (Map.Entry<String, LatencyHistogram> pool : metrics.getConnectionAcquire().entrySet()) {
+            for (String stat : LATENCY_STATS) {
+                attributes.add(attributeInfo("pool." + pool.getKey() + "." + stat, stat));
+            }
+        }
+
+        return new MBeanInfo(getClass().getName(), "WhitelistSync service metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    private static MBeanAttributeInfo attributeInfo(String name, String stat) {
+        String type = stat.endsWith("Millis") ? Double.class.getName() : Long.class.getName();
+        return new MBeanAttributeInfo(name, type, name, true, false, false);
+    }
+
+    private static Operation operation(String name) {
+        for (Operation operation : Operation.values()) {
+            if (operation.name().equals(name)) {
+                return operation;
+            }
+        }
+        return null;
+    }
+
+    private static Object operationStat(InMemoryMetrics.OperationStats stats, String stat) {
+        switch (stat) {
+            case "errors":
+                return stats.getErrors();
+            case "rowsRead":
+                return stats.getRowsRead();
+            case "rowsWritten":
+                return stats.getRowsWritten();
+            case "additions":
+                return stats.getAdditions();
+            case "removals":
+                return stats.getRemovals();
+            case "skipped":
+                return stats.getSkipped();
+            default:
+                return latencyStat(stats.getLatency(), stat);
+        }
+    }
+
+    private static Object latencyStat(LatencyHistogram histogram, String stat) {
+        switch (stat) {
+            case "count":
+                return histogram.getCount();
+            case "meanMillis":
+                return histogram.getMeanMillis();
+            case "p50Millis":
+                return histogram.getPercentileMillis(50);
+            case "p95Millis":
+                return histogram.getPercentileMillis(95);
+            case "p99Millis":
+                return histogram.getPercentileMillis(99);
+            case "maxMillis":
+                return histogram.getMaxMillis();
+            default:
+                return null;
+        }
+    }
+}
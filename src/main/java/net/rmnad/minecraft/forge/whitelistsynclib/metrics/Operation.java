@@ -0,0 +1,20 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.metrics;
+
+/**
+ * Service operations that are measured, one per {@link net.rmnad.minecraft.forge.whitelistsynclib.services.BaseService} call.
+ */
+public enum Operation {
+    INITIALIZE,
+    GET_WHITELIST,
+    GET_OPS,
+    COPY_LOCAL_WHITELIST,
+    COPY_LOCAL_OPS,
+    SYNC_WHITELIST,
+    SYNC_OPS,
+    ADD_WHITELIST,
+    ADD_OP,
+    REMOVE_WHITELIST,
+    REMOVE_OP,
+    WRITE_WHITELIST,
+    WRITE_OPS
+}
@@ -0,0 +1,38 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.metrics;
+
+/**
+ * Receives measurements from the services and connection pools.
+ *
+ * Calls happen on the thread doing the database work, so implementations must be thread safe
+ * and cheap. Every method defaults to doing nothing, implement only what you need.
+ */
+public interface ServiceMetrics {
+
+    ServiceMetrics NOOP = new ServiceMetrics() {
+    };
+
+    // Wall time of one successful call
+    default void recordLatency(Operation operation, long nanos) {
+    }
+
+    default void recordRowsRead(Operation operation, long rows) {
+    }
+
+    default void recordRowsWritten(Operation operation, long rows) {
+    }
+
+    default void recordError(Operation operation) {
+    }
+
+    // Changes a database to local sync found
+    default void recordSyncDiff(Operation operation, int additions, int removals) {
+    }
+
+    // A database to local sync that was skipped because the table digest had not changed
+    default void recordSyncSkipped(Operation operation) {
+    }
+
+    // Time spent waiting for a connection from a pool, including opening a new one
+    default void recordConnectionAcquire(String pool, long nanos) {
+    }
+}
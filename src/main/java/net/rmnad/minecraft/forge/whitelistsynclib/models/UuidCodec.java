@@ -0,0 +1,118 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.models;
+
+import java.util.UUID;
+
+/**
+ * Converts UUIDs between their String, binary and two-long forms without going through
+ * UUID.fromString, which allocates several temporary strings per call on Java 8.
+ */
+public final class UuidCodec {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private UuidCodec() {
+    }
+
+    // True for the 8-4-4-4-12 form every database and Minecraft writes.
+    public static boolean isCanonical(CharSequence s) {
+        if (s == null || s.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = s.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value is not a UUID
+     */
+    public static long parseMost(CharSequence s) {
+        if (isCanonical(s)) {
+            return hex(s, 0, 8) << 32 | hex(s, 9, 13) << 16 | hex(s, 14, 18);
+        }
+        return fallback(s).getMostSignificantBits();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value is not a UUID
+     */
+    public static long parseLeast(CharSequence s) {
+        if (isCanonical(s)) {
+            return hex(s, 19, 23) << 48 | hex(s, 24, 36);
+        }
+        return fallback(s).getLeastSignificantBits();
+    }
+
+    public static String toString(long most, long least) {
+        char[] out = new char[36];
+        digits(out, 0, most >>> 32, 8);
+        out[8] = '-';
+        digits(out, 9, most >>> 16, 4);
+        out[13] = '-';
+        digits(out, 14, most, 4);
+        out[18] = '-';
+        digits(out, 19, least >>> 48, 4);
+        out[23] = '-';
+        digits(out, 24, least, 12);
+        return new String(out);
+    }
+
+    public static byte[] toBytes(long most, long least) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (most >>> (56 - i * 8));
+            bytes[i + 8] = (byte) (least >>> (56 - i * 8));
+        }
+        return bytes;
+    }
+
+    public static long mostFromBytes(byte[] bytes) {
+        return readLong(bytes, 0);
+    }
+
+    public static long leastFromBytes(byte[] bytes) {
+        return readLong(bytes, 8);
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        if (bytes == null || bytes.length != 16) {
+            throw new IllegalArgumentException("Binary UUID must be 16 bytes");
+        }
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+    private static long hex(CharSequence s, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = (value << 4) | Character.digit(s.charAt(i), 16);
+        }
+        return value;
+    }
+
+    private static void digits(char[] out, int offset, long value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            out[i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+
+    // Non canonical input (e.g. missing leading zeros) is rare, let the JDK deal with it
+    private static UUID fallback(CharSequence s) {
+        if (s == null) {
+            throw new IllegalArgumentException("UUID is null");
+        }
+        return UUID.fromString(s.toString());
+    }
+}
@@ -1,10 +1,20 @@
 package net.rmnad.minecraft.forge.whitelistsynclib.models;
+
+import java.util.Objects;
+import java.util.UUID;
+
 /**
  * DAO for a whitelisted user
+ * The UUID is kept as two longs, its String form is only built when asked for.
+ * Two players are equal when they have the same UUID.
  * @author Richard Nader, Jr. <rmnader@svsu.edu>
  */
 public class WhitelistedPlayer {
 
+    private long uuidMost;
+    private long uuidLeast;
+    private boolean hasUuid;
+    // Lazily built from uuidMost/uuidLeast, or the value passed to setUuid
     private String uuid;
     private String name;
     private boolean isWhitelisted;
@@ -13,17 +23,56 @@ public class WhitelistedPlayer {
     }
 
     public WhitelistedPlayer(String uuid, String name, boolean isWhitelisted) {
-        this.uuid = uuid;
+        setUuid(uuid);
+        this.name = name;
+        this.isWhitelisted = isWhitelisted;
+    }
+
+    public WhitelistedPlayer(UUID uuid, String name, boolean isWhitelisted) {
+        this(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), name, isWhitelisted);
+    }
+
+    public WhitelistedPlayer(long uuidMost, long uuidLeast, String name, boolean isWhitelisted) {
+        this.uuidMost = uuidMost;
+        this.uuidLeast = uuidLeast;
+        this.hasUuid = true;
         this.name = name;
         this.isWhitelisted = isWhitelisted;
     }
 
     public String getUuid() {
+        if (uuid == null && hasUuid) {
+            uuid = UuidCodec.toString(uuidMost, uuidLeast);
+        }
         return uuid;
     }
 
     public void setUuid(String uuid) {
         this.uuid = uuid;
+        try {
+            this.uuidMost = UuidCodec.parseMost(uuid);
+            this.uuidLeast = UuidCodec.parseLeast(uuid);
+            this.hasUuid = true;
+        } catch (IllegalArgumentException e) {
+            this.hasUuid = false;
+        }
+    }
+
+    // False when no UUID was set or the String given was not a valid UUID.
+    public boolean hasUuid() {
+        return hasUuid;
+    }
+
+    public long getUuidMostSignificantBits() {
+        return uuidMost;
+    }
+
+    public long getUuidLeastSignificantBits() {
+        return uuidLeast;
+    }
+
+    public UUID toUUID() {
+        return hasUuid ? new UUID(uuidMost, uuidLeast) : null;
     }
 
     public String getName() {
@@ -42,10 +91,34 @@ public class WhitelistedPlayer {
         isWhitelisted = whitelisted;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        WhitelistedPlayer other = (WhitelistedPlayer) o;
+        if (hasUuid && other.hasUuid) {
+            return uuidMost == other.uuidMost && uuidLeast == other.uuidLeast;
+        }
+        return !hasUuid && !other.hasUuid && Objects.equals(uuid, other.uuid);
+    }
+
+    @Override
+    public int hashCode() {
+        if (hasUuid) {
+            long bits = uuidMost ^ uuidLeast;
+            return (int) (bits >> 32) ^ (int) bits;
+        }
+        return Objects.hashCode(uuid);
+    }
+
     @Override
     public String toString() {
         return "WhitelistedPlayer{" +
-                "uuid='" + uuid + '\'' +
+                "uuid='" + getUuid() + '\'' +
                 ", name='" + name + '\'' +
                 ", isWhitelisted=" + isWhitelisted +
                 '}';
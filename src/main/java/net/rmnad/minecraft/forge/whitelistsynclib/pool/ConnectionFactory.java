@@ -0,0 +1,11 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Opens a new physical connection for a {@link ConnectionPool}.
+ */
+public interface ConnectionFactory {
+    Connection create() throws SQLException;
+}
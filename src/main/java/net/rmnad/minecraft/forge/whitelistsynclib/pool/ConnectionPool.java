@@ -0,0 +1,500 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.pool;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.ServiceMetrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small bounded JDBC connection pool shared by all database services.
+ *
+ * Connections handed out by {@link #getConnection()} are proxies; calling close() on them
+ * returns the physical connection to the pool instead of closing it, so the services can
+ * keep their usual open/close pattern.
+ *
+ * With a statement cache configured, prepareStatement(sql) reuses an already prepared statement
+ * for the same SQL on that physical connection; closing it hands it back to the cache.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    // One evictor thread is enough for every pool in the process
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "WhitelistSync-PoolEvictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final ConnectionFactory factory;
+    private final ConnectionPoolConfig config;
+
+    // Most recently returned connections are at the head so hot connections stay hot
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledFuture<?> evictionTask;
+
+    private volatile ServiceMetrics metrics = ServiceMetrics.NOOP;
+
+    private volatile boolean warm = false;
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String name, ConnectionFactory factory, ConnectionPoolConfig config) {
+        this.name = name;
+        this.factory = factory;
+        this.config = config;
+        this.permits = new Semaphore(Math.max(1, config.getMaxTotal()), true);
+
+        if (config.getEvictionIntervalMillis() > 0) {
+            this.evictionTask = EVICTOR.scheduleWithFixedDelay(this::evict,
+                    config.getEvictionIntervalMillis(), config.getEvictionIntervalMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.evictionTask = null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ConnectionPoolConfig getConfig() {
+        return config;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return totalConnections.get();
+    }
+
+    public void setMetrics(ServiceMetrics metrics) {
+        this.metrics = metrics != null ? metrics : ServiceMetrics.NOOP;
+    }
+
+    /**
+     * Borrows a connection, waiting up to maxWaitMillis for one to become free.
+     * Idle connections are validated before being handed out.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool " + name + " is closed.");
+        }
+
+        long startTime = System.nanoTime();
+
+        try {
+            if (!permits.tryAcquire(config.getMaxWaitMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + config.getMaxWaitMillis() + "ms waiting for a connection from pool " + name + ".");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection from pool " + name + ".", e);
+        }
+
+        try {
+            warm = true;
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (!isExpired(pooled, System.currentTimeMillis()) && validate(pooled.connection)) {
+                    break;
+                }
+                destroy(pooled);
+            }
+
+            if (pooled == null) {
+                pooled = open();
+            }
+
+            Connection connection = pooled.borrow();
+            metrics.recordConnectionAcquire(name, System.nanoTime() - startTime);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens connections until minIdle is reached so the first callers don't pay for the handshake.
+     */
+    public void warmUp() {
+        warm = true;
+        fillToMinIdle();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+        }
+
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection connection = factory.create();
+        totalConnections.incrementAndGet();
+        return new PooledConnection(connection);
+    }
+
+    private void release(PooledConnection pooled) {
+        try {
+            if (closed || pooled.broken || isExpired(pooled, System.currentTimeMillis()) || idle.size() >= config.getMaxIdle()) {
+                destroy(pooled);
+                return;
+            }
+
+            // Don't leak transaction state to the next borrower
+            if (!pooled.connection.getAutoCommit()) {
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+
+            pooled.lastReturned = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            WhitelistSyncLib.LOGGER.debug("Discarding connection from pool {} after failed reset: {}", name, e.getMessage());
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean validate(Connection connection) {
+        try {
+            if (config.getValidationQuery() != null) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.setQueryTimeout(config.getValidationTimeoutSeconds());
+                    stmt.execute(config.getValidationQuery());
+                }
+                return true;
+            }
+            return connection.isValid(config.getValidationTimeoutSeconds());
+        } catch (SQLException | AbstractMethodError e) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(PooledConnection pooled, long now) {
+        return config.getMaxLifetimeMillis() > 0 && now - pooled.created > config.getMaxLifetimeMillis();
+    }
+
+    private void destroy(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        pooled.clearStatementCache();
+        try {
+            pooled.connection.close();
+        } catch (SQLException ignored) {}
+    }
+
+    private void evict() {
+        if (closed) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            PooledConnection pooled = it.next();
+            boolean idleTooLong = idle.size() > config.getMinIdle() && now - pooled.lastReturned > config.getIdleTimeoutMillis();
+            if ((idleTooLong || isExpired(pooled, now)) && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+
+        fillToMinIdle();
+    }
+
+    private void fillToMinIdle() {
+        if (!warm) {
+            return;
+        }
+
+        // Each new connection takes a permit like a borrower would, so filling can never push the pool past maxTotal
+        while (!closed && idle.size() < config.getMinIdle() && permits.tryAcquire()) {
+            try {
+                if (!reserveSlot()) {
+                    return;
+                }
+                PooledConnection pooled;
+                try {
+                    pooled = new PooledConnection(factory.create());
+                } catch (SQLException | RuntimeException e) {
+                    totalConnections.decrementAndGet();
+                    WhitelistSyncLib.LOGGER.debug("Could not open idle connection for pool {}: {}", name, e.getMessage());
+                    return;
+                }
+                pooled.lastReturned = System.currentTimeMillis();
+                idle.offerLast(pooled);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    // Counts a connection about to be opened, unless the pool already holds maxTotal.
+    private boolean reserveSlot() {
+        while (true) {
+            int total = totalConnections.get();
+            if (total >= config.getMaxTotal()) {
+                return false;
+            }
+            if (totalConnections.compareAndSet(total, total + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // SQLState class 08 means the connection itself is gone
+    private static boolean isFatal(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {}
+    }
+
+    /**
+     * Physical connection plus the bookkeeping the pool needs for it.
+     */
+    private final class PooledConnection {
+        private final Connection connection;
+        private final long created = System.currentTimeMillis();
+        private volatile long lastReturned = created;
+        private volatile boolean broken = false;
+        // Idle prepared statements by SQL, oldest first. Only used by the borrower or while the connection is out of use
+        private final LinkedHashMap<String, PreparedStatement> statementCache = new LinkedHashMap<>();
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        private PreparedStatement takeStatement(String sql) throws SQLException {
+            PreparedStatement statement = statementCache.remove(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+            }
+            return statement;
+        }
+
+        private void returnStatement(String sql, PreparedStatement statement) {
+            try {
+                if (closed || broken || statement.isClosed()) {
+                    closeQuietly(statement);
+                    return;
+                }
+                statement.clearParameters();
+                statement.clearBatch();
+            } catch (SQLException e) {
+                closeQuietly(statement);
+                return;
+            }
+
+            // The same SQL may have been prepared twice during one borrow, keep the newest
+            PreparedStatement previous = statementCache.put(sql, statement);
+            if (previous != null && previous != statement) {
+                closeQuietly(previous);
+            }
+
+            Iterator<PreparedStatement> eldest = statementCache.values().iterator();
+            while (statementCache.size() > config.getStatementCacheSize() && eldest.hasNext()) {
+                closeQuietly(eldest.next());
+                eldest.remove();
+            }
+        }
+
+        private void clearStatementCache() {
+            for (PreparedStatement statement : statementCache.values()) {
+                closeQuietly(statement);
+            }
+            statementCache.clear();
+        }
+
+        private Connection borrow() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+    }
+
+    /**
+     * Proxy handler for one borrow of a pooled connection.
+     */
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        // Statements opened through this borrow, closed when the connection is handed back
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean returned = false;
+
+        private Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        closeStatements();
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + name + "] " + pooled.connection;
+                default:
+                    break;
+            }
+
+            if (returned) {
+                throw new SQLException("Connection has already been returned to pool " + name + ".");
+            }
+
+            try {
+                if (config.getStatementCacheSize() > 0 && "prepareStatement".equals(method.getName()) && args.length == 1) {
+                    String sql = (String) args[0];
+                    PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                            ConnectionPool.class.getClassLoader(),
+                            new Class<?>[]{PreparedStatement.class},
+                            new CachedStatement(pooled, sql, pooled.takeStatement(sql)));
+                    statements.add(statement);
+                    return statement;
+                }
+
+                Object result = method.invoke(pooled.connection, args);
+                if (result instanceof Statement) {
+                    statements.add((Statement) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException && isFatal((SQLException) cause)) {
+                    pooled.broken = true;
+                }
+                throw cause;
+            } catch (SQLException e) {
+                if (isFatal(e)) {
+                    pooled.broken = true;
+                }
+                throw e;
+            }
+        }
+
+        private void closeStatements() {
+            for (Statement statement : statements) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {}
+            }
+            statements.clear();
+        }
+    }
+
+    /**
+     * Proxy handler for a statement from the statement cache, close() hands it back to the cache.
+     */
+    private final class CachedStatement implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final String sql;
+        private final PreparedStatement statement;
+        // Closed before the statement goes back, so the next user starts clean
+        private ResultSet resultSet;
+        private boolean returned = false;
+
+        private CachedStatement(PooledConnection pooled, String sql, PreparedStatement statement) {
+            this.pooled = pooled;
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        closeResultSet();
+                        pooled.returnStatement(sql, statement);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + name + "] " + statement;
+                default:
+                    break;
+            }
+
+            if (returned) {
+                throw new SQLException("Statement has already been closed.");
+            }
+
+            try {
+                Object result = method.invoke(statement, args);
+                if (result instanceof ResultSet) {
+                    // The driver closes the previous one when the statement is executed again
+                    resultSet = (ResultSet) result;
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException && isFatal((SQLException) cause)) {
+                    pooled.broken = true;
+                }
+                throw cause;
+            }
+        }
+
+        private void closeResultSet() {
+            if (resultSet != null) {
+                try {
+                    resultSet.close();
+                } catch (SQLException ignored) {}
+                resultSet = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.pool;
+
+/**
+ * Settings for a {@link ConnectionPool}. The defaults are sized for a single server
+ * talking to one database; every value can be overridden before the service is created.
+ */
+public class ConnectionPoolConfig {
+
+    // Connections kept open even when nothing is using them
+    private int minIdle = 1;
+    // Connections kept open after being returned, anything above is closed
+    private int maxIdle = 4;
+    // Hard limit of connections handed out at the same time
+    private int maxTotal = 8;
+    // How long a caller waits for a free connection before giving up
+    private long maxWaitMillis = 10000;
+    // Idle connections older than this are evicted (down to minIdle)
+    private long idleTimeoutMillis = 300000;
+    // Connections are retired after this age, 0 disables it
+    private long maxLifetimeMillis = 1800000;
+    // How often the evictor runs, 0 disables eviction
+    private long evictionIntervalMillis = 30000;
+    // Timeout passed to Connection.isValid when a connection is borrowed
+    private int validationTimeoutSeconds = 2;
+    // Optional query used instead of Connection.isValid
+    private String validationQuery;
+    // Prepared statements kept open per connection and reused by SQL text, 0 disables the cache
+    private int statementCacheSize = 0;
+
+    public ConnectionPoolConfig() {
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getMaxLifetimeMillis() {
+        return maxLifetimeMillis;
+    }
+
+    public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+        this.maxLifetimeMillis = maxLifetimeMillis;
+    }
+
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    public String getValidationQuery() {
+        return validationQuery;
+    }
+
+    public void setValidationQuery(String validationQuery) {
+        this.validationQuery = validationQuery;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolConfig{" +
+                "minIdle=" + minIdle +
+                ", maxIdle=" + maxIdle +
+                ", maxTotal=" + maxTotal +
+                ", maxWaitMillis=" + maxWaitMillis +
+                ", idleTimeoutMillis=" + idleTimeoutMillis +
+                ", maxLifetimeMillis=" + maxLifetimeMillis +
+                ", evictionIntervalMillis=" + evictionIntervalMillis +
+                ", validationTimeoutSeconds=" + validationTimeoutSeconds +
+                ", validationQuery='" + validationQuery + '\'' +
+                ", statementCacheSize=" + statementCacheSize +
+                '}';
+    }
+}
@@ -0,0 +1,78 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.pool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read replicas of the primary database, see {@link ReplicaSet}. Without replicas every
+ * read goes to the primary as before.
+ */
+public class ReplicaConfig {
+
+    // host:port of each replica
+    private final List<String> endpoints = new ArrayList<>();
+    // Replicas further behind than this are skipped, it is also how long reads stay on the primary after a write
+    private long maxLagMillis = 5000;
+    // How long a measured lag is trusted before the replica is checked again
+    private long lagCheckIntervalMillis = 5000;
+    // MySQL only: the replicas are Group Replication members, which have no replication channel to measure
+    private boolean groupReplication = false;
+    // Used for the pool of every replica
+    private ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
+
+    public ReplicaConfig() {
+    }
+
+    public ReplicaConfig addReplica(String ip, int port) {
+        endpoints.add(ip + ":" + port);
+        return this;
+    }
+
+    public List<String> getEndpoints() {
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    public void setMaxLagMillis(long maxLagMillis) {
+        this.maxLagMillis = Math.max(0, maxLagMillis);
+    }
+
+    public long getLagCheckIntervalMillis() {
+        return lagCheckIntervalMillis;
+    }
+
+    public void setLagCheckIntervalMillis(long lagCheckIntervalMillis) {
+        this.lagCheckIntervalMillis = Math.max(0, lagCheckIntervalMillis);
+    }
+
+    public boolean isGroupReplication() {
+        return groupReplication;
+    }
+
+    public void setGroupReplication(boolean groupReplication) {
+        this.groupReplication = groupReplication;
+    }
+
+    public ConnectionPoolConfig getPoolConfig() {
+        return poolConfig;
+    }
+
+    public void setPoolConfig(ConnectionPoolConfig poolConfig) {
+        this.poolConfig = poolConfig != null ? poolConfig : new ConnectionPoolConfig();
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicaConfig{" +
+                "endpoints=" + endpoints +
+                ", maxLagMillis=" + maxLagMillis +
+                ", lagCheckIntervalMillis=" + lagCheckIntervalMillis +
+                ", groupReplication=" + groupReplication +
+                ", poolConfig=" + poolConfig +
+                '}';
+    }
+}
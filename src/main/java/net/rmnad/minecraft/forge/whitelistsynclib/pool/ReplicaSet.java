@@ -0,0 +1,161 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.pool;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.ServiceMetrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Routes reads that may be slightly stale to read replicas, one pool per replica.
+ *
+ * {@link #getConnection()} hands out a connection to a replica whose replication lag is within
+ * {@link ReplicaConfig#getMaxLagMillis()}, taking turns between them, or null when the read has to
+ * go to the primary. The lag of a replica is measured on the connection it hands out, at most once
+ * per check interval, and a replica that can't be reached is skipped until the next check.
+ *
+ * For read-your-writes the service calls {@link #pinToPrimary()} before each write, and when it learns
+ * that another server wrote; reads then stay on the primary for the max lag, after which every replica
+ * still in use has the write.
+ */
+public class ReplicaSet implements AutoCloseable {
+
+    /**
+     * Measures how far a replica is behind the primary.
+     */
+    @FunctionalInterface
+    public interface LagProbe {
+        /**
+         * @return the lag in milliseconds, negative if it is unknown, e.g. because replication is stopped
+         */
+        long lagMillis(Connection conn) throws SQLException;
+    }
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final LagProbe probe;
+    private final long maxLagMillis;
+    private final long lagCheckIntervalMillis;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile long pinnedAtMillis = 0;
+
+    /**
+     * @param factories opens a connection to the replica at a host:port endpoint
+     */
+    public ReplicaSet(String name, ReplicaConfig config, Function<String, ConnectionFactory> factories, LagProbe probe) {
+        this.probe = probe;
+        this.maxLagMillis = config.getMaxLagMillis();
+        this.lagCheckIntervalMillis = config.getLagCheckIntervalMillis();
+        for (String endpoint : config.getEndpoints()) {
+            ConnectionPool pool = new ConnectionPool(name + "-replica-" + endpoint, factories.apply(endpoint), config.getPoolConfig());
+            replicas.add(new Replica(endpoint, pool));
+        }
+    }
+
+    public boolean isEmpty() {
+        return replicas.isEmpty();
+    }
+
+    /**
+     * Keeps reads on the primary until the replicas can be trusted to have a write that just happened.
+     */
+    public void pinToPrimary() {
+        if (!replicas.isEmpty()) {
+            pinnedAtMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return a connection to a caught up replica, or null if the read should go to the primary
+     */
+    public Connection getConnection() {
+        if (replicas.isEmpty() || System.currentTimeMillis() - pinnedAtMillis < maxLagMillis) {
+            return null;
+        }
+
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Connection conn = replicas.get((start + i) % replicas.size()).tryConnection();
+            if (conn != null) {
+                return conn;
+            }
+        }
+        return null;
+    }
+
+    public void setMetrics(ServiceMetrics metrics) {
+        for (Replica replica : replicas) {
+            replica.pool.setMetrics(metrics);
+        }
+    }
+
+    public void warmUp() {
+        for (Replica replica : replicas) {
+            replica.pool.warmUp();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    private final class Replica {
+        private final String endpoint;
+        private final ConnectionPool pool;
+
+        private volatile long checkedAtMillis = 0;
+        private volatile boolean usable = false;
+
+        private Replica(String endpoint, ConnectionPool pool) {
+            this.endpoint = endpoint;
+            this.pool = pool;
+        }
+
+        private Connection tryConnection() {
+            long now = System.currentTimeMillis();
+            boolean due = now - checkedAtMillis >= lagCheckIntervalMillis;
+            if (!usable && !due) {
+                return null;
+            }
+
+            Connection conn = null;
+            try {
+                conn = pool.getConnection();
+                if (due) {
+                    checkedAtMillis = now;
+                    long lag = probe.lagMillis(conn);
+                    boolean caughtUp = lag >= 0 && lag <= maxLagMillis;
+                    if (caughtUp != usable) {
+                        WhitelistSyncLib.LOGGER.info("Read replica {} is {} (lag {}ms)", endpoint, caughtUp ? "in use" : "skipped", lag);
+                    }
+                    usable = caughtUp;
+                }
+                if (usable) {
+                    return conn;
+                }
+            } catch (SQLException e) {
+                // Only logged when the replica goes away, not on every check while it is gone
+                if (usable || checkedAtMillis == 0) {
+                    WhitelistSyncLib.LOGGER.warn("Read replica {} failed, reading from the primary: {}", endpoint, e.getMessage());
+                }
+                checkedAtMillis = now;
+                usable = false;
+            }
+
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.resilience;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+
+/**
+ * Stops calling the database after repeated failures.
+ *
+ * Closed: calls go through, consecutive failures are counted. Open: calls are refused until the
+ * open time has passed. Half open: a single call is let through, its result closes or reopens it.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openedAt;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openMillis * 1000000L;
+    }
+
+    /**
+     * Whether a call may go to the database now. In half open state only the first caller gets true.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                // A probe is already running
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            WhitelistSyncLib.LOGGER.info("Database " + name + " is reachable again, circuit closed.");
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            if (state == State.CLOSED) {
+                WhitelistSyncLib.LOGGER.warn("Database " + name + " failed " + failures + " times in a row, failing fast for "
+                        + openNanos / 1000000L + "ms.");
+            }
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
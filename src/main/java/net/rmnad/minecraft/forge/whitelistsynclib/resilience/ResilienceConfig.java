@@ -0,0 +1,71 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.resilience;
+
+/**
+ * Settings for a {@link ResilientService}.
+ */
+public class ResilienceConfig {
+
+    // Tries per call including the first one, 1 disables retries
+    private int maxAttempts = 3;
+    // Upper bound of the first backoff, doubled for every further retry
+    private long initialBackoffMillis = 100;
+    private long maxBackoffMillis = 2000;
+    // Consecutive failed attempts that open the circuit
+    private int failureThreshold = 5;
+    // How long an open circuit fails fast before one call is let through to probe the database
+    private long openMillis = 30000;
+
+    public ResilienceConfig() {
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public void setInitialBackoffMillis(long initialBackoffMillis) {
+        this.initialBackoffMillis = Math.max(0, initialBackoffMillis);
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = Math.max(0, maxBackoffMillis);
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    public void setOpenMillis(long openMillis) {
+        this.openMillis = Math.max(1, openMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "ResilienceConfig{" +
+                "maxAttempts=" + maxAttempts +
+                ", initialBackoffMillis=" + initialBackoffMillis +
+                ", maxBackoffMillis=" + maxBackoffMillis +
+                ", failureThreshold=" + failureThreshold +
+                ", openMillis=" + openMillis +
+                '}';
+    }
+}
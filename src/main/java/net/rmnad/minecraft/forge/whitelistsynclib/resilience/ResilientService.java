@@ -0,0 +1,291 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.resilience;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.ServiceMetrics;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.services.BaseService;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.MergeBase;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncWatermark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a {@link BaseService} usable while its database is having trouble.
+ *
+ * Failed calls are retried with jittered exponential backoff, and after
+ * {@link ResilienceConfig#getFailureThreshold()} failures in a row a {@link CircuitBreaker} opens:
+ * calls then return false right away instead of each waiting for the driver's connect timeout,
+ * until a single probe call gets through again. While the database can't be read the getters
+ * return the last list they read successfully, never an empty list that would wipe local state.
+ *
+ * A call counts as failed when it returns false or throws, so op list methods should not be
+ * called on a service that doesn't sync ops. Streaming reads are never retried since rows may
+ * already have been passed on; syncs are, as they only apply changes once the read succeeded.
+ */
+public class ResilientService implements BaseService {
+
+    private final BaseService service;
+    private final ResilienceConfig config;
+    private final CircuitBreaker breaker;
+
+    // Last successful reads, served while the database is down
+    private volatile ArrayList<WhitelistedPlayer> lastWhitelist;
+    private volatile ArrayList<OppedPlayer> lastOps;
+
+    public ResilientService(BaseService service) {
+        this(service, new ResilienceConfig());
+    }
+
+    public ResilientService(BaseService service, ResilienceConfig config) {
+        this.service = service;
+        this.config = config;
+        this.breaker = new CircuitBreaker(service.getClass().getSimpleName(), config.getFailureThreshold(), config.getOpenMillis());
+    }
+
+    public BaseService getService() {
+        return service;
+    }
+
+    public CircuitBreaker.State getState() {
+        return breaker.getState();
+    }
+
+    // True while calls are refused or only a probe is let through
+    public boolean isDegraded() {
+        return breaker.getState() != CircuitBreaker.State.CLOSED;
+    }
+
+    @Override
+    public boolean initializeDatabase() {
+        return call("initialize database", config.getMaxAttempts(), service::initializeDatabase);
+    }
+
+    @Override
+    public boolean requiresSyncing() {
+        return service.requiresSyncing();
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
+        ArrayList<WhitelistedPlayer> players = new ArrayList<>();
+        if (call("read whitelist", config.getMaxAttempts(), () -> {
+            players.clear();
+            return service.streamWhitelistedPlayersFromDatabase(players::add);
+        })) {
+            lastWhitelist = new ArrayList<>(players);
+            return players;
+        }
+
+        ArrayList<WhitelistedPlayer> last = lastWhitelist;
+        if (last == null) {
+            WhitelistSyncLib.LOGGER.error("Whitelist could not be read and there is no earlier copy to fall back to.");
+            return new ArrayList<>();
+        }
+        WhitelistSyncLib.LOGGER.warn("Whitelist could not be read, using the last good copy with {} players.", last.size());
+        return new ArrayList<>(last);
+    }
+
+    @Override
+    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+        ArrayList<OppedPlayer> players = new ArrayList<>();
+        if (call("read op list", config.getMaxAttempts(), () -> {
+            players.clear();
+            return service.streamOppedPlayersFromDatabase(players::add);
+        })) {
+            lastOps = new ArrayList<>(players);
+            return players;
+        }
+
+        ArrayList<OppedPlayer> last = lastOps;
+        if (last == null) {
+            WhitelistSyncLib.LOGGER.error("Op list could not be read and there is no earlier copy to fall back to.");
+            return new ArrayList<>();
+        }
+        WhitelistSyncLib.LOGGER.warn("Op list could not be read, using the last good copy with {} players.", last.size());
+        return new ArrayList<>(last);
+    }
+
+    @Override
+    public boolean streamWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return call("stream whitelist", 1, () -> service.streamWhitelistedPlayersFromDatabase(consumer));
+    }
+
+    @Override
+    public boolean streamOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return call("stream op list", 1, () -> service.streamOppedPlayersFromDatabase(consumer));
+    }
+
+    @Override
+    public boolean streamAllWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return call("stream whitelist", 1, () -> service.streamAllWhitelistedPlayersFromDatabase(consumer));
+    }
+
+    @Override
+    public boolean streamAllOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return call("stream op list", 1, () -> service.streamAllOppedPlayersFromDatabase(consumer));
+    }
+
+    @Override
+    public boolean copyLocalWhitelistedPlayersToDatabase(ArrayList<WhitelistedPlayer> whitelistedPlayers) {
+        return call("copy local whitelist", config.getMaxAttempts(), () -> service.copyLocalWhitelistedPlayersToDatabase(whitelistedPlayers));
+    }
+
+    @Override
+    public boolean copyLocalOppedPlayersToDatabase(ArrayList<OppedPlayer> oppedPlayers) {
+        return call("copy local op list", config.getMaxAttempts(), () -> service.copyLocalOppedPlayersToDatabase(oppedPlayers));
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return call("sync whitelist", config.getMaxAttempts(), () -> service.copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onUserAdd, onUserRemove));
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return call("sync op list", config.getMaxAttempts(), () -> service.copyDatabaseOppedPlayersToLocal(localOppedPlayers, onUserAdd, onUserRemove));
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        return call("sync whitelist", config.getMaxAttempts(), () -> service.copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onUserAdd, onUserRemove, watermark));
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        return call("sync op list", config.getMaxAttempts(), () -> service.copyDatabaseOppedPlayersToLocal(localOppedPlayers, onUserAdd, onUserRemove, watermark));
+    }
+
+    // Not retried: the list that succeeded has already applied its changes
+    @Override
+    public boolean syncAll(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, ArrayList<OppedPlayer> localOppedPlayers,
+                           IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove) {
+        return call("sync whitelist and op list", 1,
+                () -> service.syncAll(localWhitelistedPlayers, localOppedPlayers, onWhitelistAdd, onWhitelistRemove, onOpAdd, onOpRemove));
+    }
+
+    @Override
+    public boolean mergeWhitelistedPlayers(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return call("merge whitelist", config.getMaxAttempts(), () -> service.mergeWhitelistedPlayers(localWhitelistedPlayers, base, onUserAdd, onUserRemove));
+    }
+
+    @Override
+    public boolean mergeOppedPlayers(ArrayList<OppedPlayer> localOppedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return call("merge op list", config.getMaxAttempts(), () -> service.mergeOppedPlayers(localOppedPlayers, base, onUserAdd, onUserRemove));
+    }
+
+    @Override
+    public boolean addWhitelistPlayer(UUID uuid, String name) {
+        return call("add whitelisted player", config.getMaxAttempts(), () -> service.addWhitelistPlayer(uuid, name));
+    }
+
+    @Override
+    public boolean addOppedPlayer(UUID uuid, String name) {
+        return call("add opped player", config.getMaxAttempts(), () -> service.addOppedPlayer(uuid, name));
+    }
+
+    @Override
+    public boolean removeWhitelistPlayer(UUID uuid, String name) {
+        return call("remove whitelisted player", config.getMaxAttempts(), () -> service.removeWhitelistPlayer(uuid, name));
+    }
+
+    @Override
+    public boolean removeOppedPlayer(UUID uuid, String name) {
+        return call("remove opped player", config.getMaxAttempts(), () -> service.removeOppedPlayer(uuid, name));
+    }
+
+    @Override
+    public boolean writeWhitelistedPlayers(Collection<WhitelistedPlayer> players) {
+        return call("write whitelist", config.getMaxAttempts(), () -> service.writeWhitelistedPlayers(players));
+    }
+
+    @Override
+    public boolean writeOppedPlayers(Collection<OppedPlayer> players) {
+        return call("write op list", config.getMaxAttempts(), () -> service.writeOppedPlayers(players));
+    }
+
+    // Coordination calls are skipped while the circuit is open, the sync itself probes the database
+    @Override
+    public boolean tryAcquireSyncLease(String nodeId, long leaseMillis) {
+        return !isDegraded() && service.tryAcquireSyncLease(nodeId, leaseMillis);
+    }
+
+    @Override
+    public long publishChangeDigest() {
+        return isDegraded() ? 0 : service.publishChangeDigest();
+    }
+
+    @Override
+    public long readChangeDigest() {
+        return isDegraded() ? 0 : service.readChangeDigest();
+    }
+
+    @Override
+    public void setMetrics(ServiceMetrics metrics) {
+        service.setMetrics(metrics);
+    }
+
+    @Override
+    public void shutdown() {
+        service.shutdown();
+    }
+
+    private boolean call(String action, int maxAttempts, BooleanSupplier call) {
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                WhitelistSyncLib.LOGGER.debug("Database unavailable, skipped {}.", action);
+                return false;
+            }
+
+            boolean success;
+            try {
+                success = call.getAsBoolean();
+            } catch (RuntimeException e) {
+                WhitelistSyncLib.LOGGER.error("Unexpected error during " + action + ".");
+                WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+                success = false;
+            }
+
+            if (success) {
+                breaker.recordSuccess();
+                return true;
+            }
+            breaker.recordFailure();
+
+            if (attempt >= maxAttempts) {
+                return false;
+            }
+            if (!sleep(backoffMillis(attempt))) {
+                return false;
+            }
+            WhitelistSyncLib.LOGGER.debug("Retrying {}, attempt {} of {}.", action, attempt + 1, maxAttempts);
+        }
+    }
+
+    // Full jitter: anywhere between zero and the exponential bound, so servers don't retry in lockstep
+    private long backoffMillis(int attempt) {
+        long bound = config.getInitialBackoffMillis() << Math.min(attempt - 1, 30);
+        bound = Math.min(bound, config.getMaxBackoffMillis());
+        return bound <= 0 ? 0 : ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    private static boolean sleep(long millis) {
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -2,11 +2,18 @@ package net.rmnad.minecraft.forge.whitelistsynclib.services;
 
 import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
 import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.ServiceMetrics;
 import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
 import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.MergeBase;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncWatermark;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.ThreeWayMerge;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * Interface for different database services
@@ -21,6 +28,31 @@ public interface BaseService {
     public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase();
     public ArrayList<OppedPlayer> getOppedPlayersFromDatabase();
 
+    // Streaming getter functions
+    // Each row is handed to the consumer while the result set is read, so the table is never held in memory.
+    // Returns false if the query failed; rows read before the failure have already been passed on.
+    // Services without a streaming query fall back to the list getters.
+    public default boolean streamWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        getWhitelistedPlayersFromDatabase().forEach(consumer);
+        return true;
+    }
+
+    public default boolean streamOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        getOppedPlayersFromDatabase().forEach(consumer);
+        return true;
+    }
+
+    // Like the streaming getters but every row is passed on, removed players included with their flag unset.
+    // These tombstones are what lets a merge tell a removal on the database from a player it never had.
+    // Services that only keep active rows fall back to the streaming getters.
+    public default boolean streamAllWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return streamWhitelistedPlayersFromDatabase(consumer);
+    }
+
+    public default boolean streamAllOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return streamOppedPlayersFromDatabase(consumer);
+    }
+
     // Syncing functions
     public boolean copyLocalWhitelistedPlayersToDatabase(ArrayList<WhitelistedPlayer> whitelistedPlayers);
     public boolean copyLocalOppedPlayersToDatabase(ArrayList<OppedPlayer> oppedPlayers);
@@ -28,6 +60,38 @@ public interface BaseService {
     public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove);
     public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove);
 
+    // Incremental syncing functions
+    // Only rows changed since the watermark are read, the watermark is advanced and saved on success.
+    // Services without a change feed fall back to a full sync.
+    public default boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        return copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onUserAdd, onUserRemove);
+    }
+
+    public default boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        return copyDatabaseOppedPlayersToLocal(localOppedPlayers, onUserAdd, onUserRemove);
+    }
+
+    // Combined syncing functions
+    // Syncs the whitelist and the op list, callbacks run on the calling thread, whitelist changes first.
+    // Services that sync ops read both tables at once, see ParallelSync; this fallback runs them one after the other.
+    public default boolean syncAll(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, ArrayList<OppedPlayer> localOppedPlayers,
+                                   IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove) {
+        boolean whitelistSuccess = copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onWhitelistAdd, onWhitelistRemove);
+        boolean opSuccess = copyDatabaseOppedPlayersToLocal(localOppedPlayers, onOpAdd, onOpRemove);
+        return whitelistSuccess && opSuccess;
+    }
+
+    // Two-way syncing functions
+    // Changes made on either side since the last merge win, see ThreeWayMerge. The local list is updated
+    // through the callbacks, local changes are written to the database and the base is saved on success.
+    public default boolean mergeWhitelistedPlayers(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return ThreeWayMerge.mergeWhitelist(this, localWhitelistedPlayers, base, onUserAdd, onUserRemove);
+    }
+
+    public default boolean mergeOppedPlayers(ArrayList<OppedPlayer> localOppedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return ThreeWayMerge.mergeOps(this, localOppedPlayers, base, onUserAdd, onUserRemove);
+    }
+
 
     // Addition functions
     public boolean addWhitelistPlayer(UUID uuid, String name);
@@ -38,4 +102,87 @@ public interface BaseService {
     public boolean removeWhitelistPlayer(UUID uuid, String name);
     public boolean removeOppedPlayer(UUID uuid, String name);
 
+
+    // Bulk addition and removal functions
+    // The whole set is written at once through the bulk write functions below. The result holds every
+    // player with a valid uuid, in the given order, with whether it was written; the flag of the given
+    // players is ignored. Players without a name are never written.
+    public default Map<UUID, Boolean> addWhitelistPlayers(Collection<WhitelistedPlayer> players) {
+        return BulkWrite.whitelist(this, players, true);
+    }
+
+    public default Map<UUID, Boolean> removeWhitelistPlayers(Collection<WhitelistedPlayer> players) {
+        return BulkWrite.whitelist(this, players, false);
+    }
+
+    public default Map<UUID, Boolean> addOppedPlayers(Collection<OppedPlayer> players) {
+        return BulkWrite.ops(this, players, true);
+    }
+
+    public default Map<UUID, Boolean> removeOppedPlayers(Collection<OppedPlayer> players) {
+        return BulkWrite.ops(this, players, false);
+    }
+
+
+    // Bulk write functions
+    // Writes the state of every player in one go: players with the flag set are added, the rest removed.
+    // Services without a batched write path fall back to one call per player.
+    public default boolean writeWhitelistedPlayers(Collection<WhitelistedPlayer> players) {
+        boolean success = true;
+        for (WhitelistedPlayer player : players) {
+            if (!player.hasUuid()) {
+                continue;
+            }
+            if (player.isWhitelisted()) {
+                success &= addWhitelistPlayer(player.toUUID(), player.getName());
+            } else {
+                success &= removeWhitelistPlayer(player.toUUID(), player.getName());
+            }
+        }
+        return success;
+    }
+
+    public default boolean writeOppedPlayers(Collection<OppedPlayer> players) {
+        boolean success = true;
+        for (OppedPlayer player : players) {
+            if (!player.hasUuid()) {
+                continue;
+            }
+            if (player.isOp()) {
+                success &= addOppedPlayer(player.toUUID(), player.getName());
+            } else {
+                success &= removeOppedPlayer(player.toUUID(), player.getName());
+            }
+        }
+        return success;
+    }
+
+
+    // Coordination functions
+    // Lets servers sharing a database elect one poller, see SyncScheduler. The lease holder publishes a
+    // digest of the tables and the others only read it. A digest of 0 means unknown, so callers sync anyway.
+    // Services without a shared state table never grant the lease, so every server keeps polling itself.
+    public default boolean tryAcquireSyncLease(String nodeId, long leaseMillis) {
+        return false;
+    }
+
+    // Computes the digest of the synced tables, stores it for the other servers and returns it.
+    public default long publishChangeDigest() {
+        return 0;
+    }
+
+    public default long readChangeDigest() {
+        return 0;
+    }
+
+
+    // Instrumentation
+    // Where the service reports latencies, row counts and errors, see InMemoryMetrics.
+    public default void setMetrics(ServiceMetrics metrics) {}
+
+
+    // Cleanup functions
+    // Closes pooled connections, call when the server stops.
+    public default void shutdown() {}
+
 }
@@ -0,0 +1,68 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.services;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bulk add/remove on top of the batched write functions of a {@link BaseService}.
+ *
+ * All valid players go to the database in one write, which the services run as one transaction,
+ * so they either all succeed or all fail. Players without a name can't be written and fail alone.
+ */
+final class BulkWrite {
+
+    private BulkWrite() {
+    }
+
+    static Map<UUID, Boolean> whitelist(BaseService service, Collection<WhitelistedPlayer> players, boolean whitelisted) {
+        LinkedHashMap<UUID, Boolean> results = new LinkedHashMap<>();
+        List<WhitelistedPlayer> batch = new ArrayList<>(players.size());
+        for (WhitelistedPlayer player : players) {
+            if (!player.hasUuid()) {
+                WhitelistSyncLib.LOGGER.warn("Ignoring player " + player.getName() + " with invalid uuid " + player.getUuid());
+                continue;
+            }
+            results.put(player.toUUID(), false);
+            if (player.getName() != null) {
+                batch.add(new WhitelistedPlayer(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits(), player.getName(), whitelisted));
+            }
+        }
+
+        if (!batch.isEmpty() && service.writeWhitelistedPlayers(batch)) {
+            for (WhitelistedPlayer player : batch) {
+                results.put(player.toUUID(), true);
+            }
+        }
+        return results;
+    }
+
+    static Map<UUID, Boolean> ops(BaseService service, Collection<OppedPlayer> players, boolean opped) {
+        LinkedHashMap<UUID, Boolean> results = new LinkedHashMap<>();
+        List<OppedPlayer> batch = new ArrayList<>(players.size());
+        for (OppedPlayer player : players) {
+            if (!player.hasUuid()) {
+                WhitelistSyncLib.LOGGER.warn("Ignoring player " + player.getName() + " with invalid uuid " + player.getUuid());
+                continue;
+            }
+            results.put(player.toUUID(), false);
+            if (player.getName() != null) {
+                batch.add(new OppedPlayer(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits(), player.getName(), opped));
+            }
+        }
+
+        if (!batch.isEmpty() && service.writeOppedPlayers(batch)) {
+            for (OppedPlayer player : batch) {
+                results.put(player.toUUID(), true);
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,63 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Shared batched write path for the database services.
+ *
+ * One statement is prepared, rows are added with addBatch and sent every batchSize rows,
+ * and the whole write runs in a single transaction.
+ */
+final class JdbcBatch {
+
+    static final int DEFAULT_BATCH_SIZE = 500;
+
+    private JdbcBatch() {
+    }
+
+    interface Binder<T> {
+        // Set the parameters for one row, return false to skip the row.
+        boolean bind(PreparedStatement stmt, T item) throws SQLException;
+    }
+
+    /**
+     * @return the number of rows written
+     */
+    static <T> int write(Connection conn, String sql, Iterable<T> items, int batchSize, Binder<T> binder) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int records = 0;
+            int pending = 0;
+
+            for (T item : items) {
+                if (!binder.bind(stmt, item)) {
+                    continue;
+                }
+
+                stmt.addBatch();
+                records++;
+
+                if (++pending >= batchSize) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+
+            if (pending > 0) {
+                stmt.executeBatch();
+            }
+
+            conn.commit();
+            return records;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -3,12 +3,29 @@ package net.rmnad.minecraft.forge.whitelistsynclib.services;
 import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
 import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
 import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.Operation;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.ServiceMetrics;
 import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.UuidCodec;
 import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.pool.ConnectionPool;
+import net.rmnad.minecraft.forge.whitelistsynclib.pool.ConnectionPoolConfig;
+import net.rmnad.minecraft.forge.whitelistsynclib.pool.ReplicaConfig;
+import net.rmnad.minecraft.forge.whitelistsynclib.pool.ReplicaSet;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.ParallelSync;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncDiff;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncDigest;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncWatermark;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Service for MYSQL Databases
@@ -17,6 +34,18 @@ import java.util.UUID;
  */
 public class MySqlService implements BaseService {
 
+    // Set by MySQL on every insert/replace, used for incremental syncs
+    private static final String UPDATED_AT_COLUMN = "`updated_at` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)";
+    // Rows per round trip when reading whole tables, keeps memory flat for large tables
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    // Recorded in the schema version table for each list's uuid column
+    private static final int UUID_FORMAT_TEXT = 1;
+    private static final int UUID_FORMAT_BINARY = 2;
+
+    // Named lock held while migrating, so servers starting together run the migrations one after the other
+    private static final String MIGRATION_LOCK = "whitelistsync_migrate";
+    private static final int MIGRATION_LOCK_TIMEOUT_SECONDS = 60;
+
     private final boolean syncingOpList;
 
     private final String databaseName;
@@ -24,13 +53,170 @@ public class MySqlService implements BaseService {
     private final String username;
     private final String password;
 
+    private final ConnectionPool pool;
+    // Empty unless replicas are configured, then sync and list reads go there
+    private final ReplicaSet replicas;
+
+    // Hot path SQL, built once because the database name never changes
+    private final String selectWhitelistSql;
+    private final String selectOpsSql;
+    private final String copyWhitelistSql;
+    private final String copyOpsSql;
+    private final String digestWhitelistSql;
+    private final String digestOpsSql;
+    private final String syncWhitelistSql;
+    private final String syncWhitelistSinceSql;
+    private final String syncOpsSql;
+    private final String syncOpsSinceSql;
+    private final String addWhitelistSql;
+    private final String addOpSql;
+    private final String removeWhitelistSql;
+    private final String removeOpSql;
+    private final String writeWhitelistSql;
+    private final String writeOpsSql;
+    private final String stateTable;
+    private final String schemaTable;
+
+    private int batchSize = JdbcBatch.DEFAULT_BATCH_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    // What the last successful sync of each table saw, a matching probe skips the next one
+    private volatile SyncDigest whitelistDigest;
+    private volatile SyncDigest opDigest;
+    // Last digest seen by readChangeDigest
+    private volatile long lastChangeDigest;
+
+    private volatile ServiceMetrics metrics = ServiceMetrics.NOOP;
+
+    // Store uuids as BINARY(16) instead of VARCHAR(60), existing tables are converted on startup
+    private boolean binaryUuids = false;
+
     public MySqlService(String databaseName, String ip, int port, String username, String password, boolean syncingOpList) {
+        this(databaseName, ip, port, username, password, syncingOpList, new ConnectionPoolConfig());
+    }
+
+    public MySqlService(String databaseName, String ip, int port, String username, String password, boolean syncingOpList, ConnectionPoolConfig poolConfig) {
+        this(databaseName, ip, port, username, password, syncingOpList, poolConfig, new ReplicaConfig());
+    }
+
+    public MySqlService(String databaseName, String ip, int port, String username, String password, boolean syncingOpList, ConnectionPoolConfig poolConfig, ReplicaConfig replicaConfig) {
         this.databaseName = databaseName;
-        this.url = "jdbc:mysql://" + ip + ":" + port + "/?allowPublicKeyRetrieval=true&useSSL=false&serverTimezone=UTC";
+        this.url = jdbcUrl(ip + ":" + port);
         this.username = username;
         this.password = password;
         
         this.syncingOpList = syncingOpList;
+
+        this.pool = new ConnectionPool("mysql", () -> DriverManager.getConnection(this.url, this.username, this.password), poolConfig);
+        this.replicas = new ReplicaSet("mysql", replicaConfig,
+                endpoint -> () -> DriverManager.getConnection(jdbcUrl(endpoint), this.username, this.password),
+                conn -> replicaLagMillis(conn, replicaConfig.isGroupReplication()));
+
+        String whitelist = databaseName + ".whitelist";
+        String op = databaseName + ".op";
+        this.selectWhitelistSql = "SELECT uuid, name FROM " + whitelist + " WHERE whitelisted = true;";
+        this.selectOpsSql = "SELECT uuid, name FROM " + op + " WHERE isOp = true;";
+        this.copyWhitelistSql = "INSERT IGNORE INTO " + whitelist + "(uuid, name, whitelisted) VALUES (?, ?, true)";
+        this.copyOpsSql = "INSERT IGNORE INTO " + op + "(uuid, name, isOp) VALUES (?, ?, true)";
+        this.digestWhitelistSql = "SELECT COUNT(*), COALESCE(SUM(whitelisted), 0), MAX(updated_at) FROM " + whitelist;
+        this.digestOpsSql = "SELECT COUNT(*), COALESCE(SUM(isOp), 0), MAX(updated_at) FROM " + op;
+        this.syncWhitelistSql = "SELECT name, uuid, whitelisted, updated_at FROM " + whitelist;
+        this.syncWhitelistSinceSql = syncWhitelistSql + " WHERE updated_at >= ?";
+        this.syncOpsSql = "SELECT name, uuid, isOp, updated_at FROM " + op;
+        this.syncOpsSinceSql = syncOpsSql + " WHERE updated_at >= ?";
+        this.addWhitelistSql = "REPLACE INTO " + whitelist + "(uuid, name, whitelisted) VALUES (?, ?, true)";
+        this.addOpSql = "REPLACE INTO " + op + "(uuid, name, isOp) VALUES (?, ?, true)";
+        this.removeWhitelistSql = "REPLACE INTO " + whitelist + "(uuid, name, whitelisted) VALUES (?, ?, false)";
+        this.removeOpSql = "REPLACE INTO " + op + "(uuid, name, isOp) VALUES (?, ?, false)";
+        this.writeWhitelistSql = "REPLACE INTO " + whitelist + "(uuid, name, whitelisted) VALUES (?, ?, ?)";
+        this.writeOpsSql = "REPLACE INTO " + op + "(uuid, name, isOp) VALUES (?, ?, ?)";
+        this.stateTable = databaseName + "." + SyncStateTable.TABLE;
+        this.schemaTable = databaseName + "." + SchemaMigrator.TABLE;
+    }
+
+    private static String jdbcUrl(String endpoint) {
+        return "jdbc:mysql://" + endpoint + "/?allowPublicKeyRetrieval=true&useSSL=false&serverTimezone=UTC"
+                // Let the driver rewrite batched inserts into multi-row statements
+                + "&rewriteBatchedStatements=true"
+                // Statements with a fetch size read through a server side cursor instead of buffering every row
+                + "&useCursorFetch=true"
+                // Prepare statements on the server once per connection and keep them when closed
+                + "&useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=64&prepStmtCacheSqlLimit=2048";
+    }
+
+    // Borrow a connection from the pool, closing it hands it back.
+    private Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    // Sync and list reads go to a caught up replica when there is one, see ReplicaSet.
+    private Connection getReadConnection() throws SQLException {
+        Connection replica = replicas.getConnection();
+        return replica != null ? replica : getConnection();
+    }
+
+    // Seconds_Behind_Source of the replication channel. A server without one is only caught up when the replicas are
+    // configured as Group Replication members, otherwise it is likely a misconfigured endpoint and its lag is unknown.
+    private static long replicaLagMillis(Connection conn, boolean groupReplication) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs;
+            try {
+                rs = stmt.executeQuery("SHOW REPLICA STATUS");
+            } catch (SQLException e) {
+                // Before MySQL 8.0.22
+                rs = stmt.executeQuery("SHOW SLAVE STATUS");
+            }
+            try {
+                if (!rs.next()) {
+                    return groupReplication ? 0 : -1;
+                }
+                String column = "Seconds_Behind_Source";
+                try {
+                    rs.findColumn(column);
+                } catch (SQLException e) {
+                    column = "Seconds_Behind_Master";
+                }
+                long seconds = rs.getLong(column);
+                // NULL while replication is stopped
+                return rs.wasNull() ? -1 : TimeUnit.SECONDS.toMillis(seconds);
+            } finally {
+                rs.close();
+            }
+        }
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    // Number of rows sent per executeBatch call when copying local lists to the database.
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    // Number of rows fetched per round trip when reading whole tables.
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = Math.max(1, fetchSize);
+    }
+
+    public boolean isBinaryUuids() {
+        return binaryUuids;
+    }
+
+    // Must be set before initializeDatabase so the tables can be created or migrated to match.
+    public void setBinaryUuids(boolean binaryUuids) {
+        this.binaryUuids = binaryUuids;
+    }
+
+    @Override
+    public void setMetrics(ServiceMetrics metrics) {
+        this.metrics = metrics != null ? metrics : ServiceMetrics.NOOP;
+        pool.setMetrics(this.metrics);
+        replicas.setMetrics(this.metrics);
     }
 
     @Override
@@ -42,6 +228,7 @@ public class MySqlService implements BaseService {
     @Override
     public boolean initializeDatabase() {
         WhitelistSyncLib.LOGGER.info("Setting up the MySQL service...");
+        long startTime = System.nanoTime();
         boolean isSuccess = true;
 
         try {
@@ -55,9 +242,9 @@ public class MySqlService implements BaseService {
 
         if (isSuccess) {
             try {
-                Connection conn = DriverManager.getConnection(url, username, password);
-                WhitelistSyncLib.LOGGER.debug("Connected to " + url + " successfully!");
-                conn.close();
+                // Borrowing opens the connection, closing hands it back to the pool
+                getConnection().close();
+                WhitelistSyncLib.LOGGER.debug("Connected to {} successfully!", url);
             } catch (SQLException e) {
                 WhitelistSyncLib.LOGGER.error("Failed to connect to the mySQL database! Did you set one up in the config?");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
@@ -66,89 +253,36 @@ public class MySqlService implements BaseService {
         }
 
         if (isSuccess) {
-            // Create database
-            try {
-
-                // Create database
-                String sql = "CREATE DATABASE IF NOT EXISTS " + databaseName + ";";
-
-                // Create statement
-                Connection conn = DriverManager.getConnection(url, username, password);
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                stmt.execute();
-                stmt.close();
-
-                // Create whitelist table
-                sql = "CREATE TABLE IF NOT EXISTS " + databaseName + ".whitelist ("
-                        + "`uuid` VARCHAR(60) NOT NULL,"
-                        + "`name` VARCHAR(20) NOT NULL,"
-                        + "`whitelisted` TINYINT NOT NULL DEFAULT 1,"
-                        + "PRIMARY KEY (`uuid`)"
-                        + ")";
-                PreparedStatement stmt2 = conn.prepareStatement(sql);
-                stmt2.execute();
-                stmt2.close();
-
-                // Create opped players table if enabled
-                if (this.syncingOpList) {
-                    sql = "CREATE TABLE IF NOT EXISTS " + databaseName + ".op ("
-                            + "`uuid` VARCHAR(60) NOT NULL,"
-                            + "`name` VARCHAR(20) NOT NULL,"
-                            + "`isOp` TINYINT NOT NULL DEFAULT 1,"
-                            + "PRIMARY KEY (`uuid`)"
-                            + ")";
-                    PreparedStatement stmt3 = conn.prepareStatement(sql);
-                    stmt3.execute();
-                    stmt3.close();
-
-
-                    // Remove old op level field if it exists
-                    sql =
-                            "SELECT COUNT(*) AS count " +
-                                    "FROM INFORMATION_SCHEMA.COLUMNS " +
-                                    "WHERE TABLE_SCHEMA = '" + databaseName + "' AND TABLE_NAME = 'op' AND COLUMN_NAME = 'level'";
-                    PreparedStatement stmt4 = conn.prepareStatement(sql);
-                    ResultSet rs = stmt4.executeQuery();
-                    rs.next();
-
-                    int count = rs.getInt("count");
-
-                    if(count > 0) {
-                        sql = "ALTER TABLE " + databaseName + ".op DROP COLUMN level";
-                        PreparedStatement stmt5 = conn.prepareStatement(sql);
-                        stmt5.execute();
-                        stmt5.close();
-                        WhitelistSyncLib.LOGGER.info("Removed unused op table \"level\" column.");
+            try (Connection conn = getConnection()) {
+                // The versions are read once the lock is held, so they include what another server just migrated
+                lockMigrations(conn);
+                try {
+                    // One query when the schema is current, see whitelistMigrations and opMigrations
+                    SchemaMigrator migrator = SchemaMigrator.open(conn, schemaTable, "INSERT IGNORE INTO", "",
+                            c -> execute(c, "CREATE DATABASE IF NOT EXISTS " + databaseName));
+
+                    migrator.migrate(conn, "whitelist", whitelistMigrations());
+                    migrateUuidFormat(conn, migrator, "whitelist", "idx_whitelist_covering", "whitelisted");
+
+                    if (this.syncingOpList) {
+                        migrator.migrate(conn, "op", opMigrations());
+                        migrateUuidFormat(conn, migrator, "op", "idx_op_covering", "isOp");
                     }
-                    rs.close();
-                    stmt4.close();
-
-
-                    // Remove old op bypassesPlayerLimit field if it exists
-                    sql =
-                            "SELECT COUNT(*) AS count " +
-                                    "FROM INFORMATION_SCHEMA.COLUMNS " +
-                                    "WHERE TABLE_SCHEMA = '" + databaseName + "' AND TABLE_NAME = 'op' AND COLUMN_NAME = 'bypassesPlayerLimit'";
-                    PreparedStatement stmt5 = conn.prepareStatement(sql);
-                    ResultSet rs1 = stmt5.executeQuery();
-                    rs1.next();
-
-                    int count1 = rs1.getInt("count");
-
-                    if(count1 > 0) {
-                        sql = "ALTER TABLE " + databaseName + ".op DROP COLUMN bypassesPlayerLimit";
-                        PreparedStatement stmt6 = conn.prepareStatement(sql);
-                        stmt6.execute();
-                        stmt6.close();
-                        WhitelistSyncLib.LOGGER.info("Removed unused op table \"bypassesPlayerLimit\" column.");
-                    }
-                    rs1.close();
-                    stmt5.close();
 
+                    // Lease and change digest shared by the servers using this database
+                    migrator.migrate(conn, SyncStateTable.TABLE, Collections.singletonList(c -> {
+                        execute(c, SyncStateTable.createSql(stateTable));
+                        SyncStateTable.createRows(c, stateTable, "INSERT IGNORE INTO", "");
+                    }));
+                } finally {
+                    unlockMigrations(conn);
                 }
 
                 WhitelistSyncLib.LOGGER.info("Setup MySQL database!");
-                conn.close();
+
+                // Open the idle connections now instead of on the first sync
+                pool.warmUp();
+                replicas.warmUp();
             } catch (Exception e) {
                 WhitelistSyncLib.LOGGER.error("Error initializing database and database tables.");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
@@ -157,81 +291,386 @@ public class MySqlService implements BaseService {
         }
 
 
+        metrics.recordLatency(Operation.INITIALIZE, System.nanoTime() - startTime);
+        if (!isSuccess) {
+            metrics.recordError(Operation.INITIALIZE);
+        }
+
         return isSuccess;
     }
 
+    // Append only, the position of a migration is its schema version.
+    private List<SchemaMigrator.Migration> whitelistMigrations() {
+        return Arrays.asList(
+                conn -> execute(conn, "CREATE TABLE IF NOT EXISTS " + databaseName + ".whitelist ("
+                        + "`uuid` " + uuidColumnType() + " NOT NULL,"
+                        + "`name` VARCHAR(20) NOT NULL,"
+                        + "`whitelisted` TINYINT NOT NULL DEFAULT 1,"
+                        + UPDATED_AT_COLUMN + ","
+                        + "PRIMARY KEY (`uuid`),"
+                        + "INDEX `idx_whitelist_updated_at` (`updated_at`),"
+                        + "INDEX `idx_whitelist_covering` (`whitelisted`, `uuid`, `name`)"
+                        + ")"),
+                // Change feed column for tables created before it existed
+                conn -> addUpdatedAtColumn(conn, "whitelist"),
+                // Lets the list query use an index only scan
+                conn -> addCoveringIndex(conn, "whitelist", "idx_whitelist_covering", "whitelisted")
+        );
+    }
+
+    // Same rules as whitelistMigrations.
+    private List<SchemaMigrator.Migration> opMigrations() {
+        return Arrays.asList(
+                conn -> execute(conn, "CREATE TABLE IF NOT EXISTS " + databaseName + ".op ("
+                        + "`uuid` " + uuidColumnType() + " NOT NULL,"
+                        + "`name` VARCHAR(20) NOT NULL,"
+                        + "`isOp` TINYINT NOT NULL DEFAULT 1,"
+                        + UPDATED_AT_COLUMN + ","
+                        + "PRIMARY KEY (`uuid`),"
+                        + "INDEX `idx_op_updated_at` (`updated_at`),"
+                        + "INDEX `idx_op_covering` (`isOp`, `uuid`, `name`)"
+                        + ")"),
+                // Remove old op fields
+                conn -> dropColumn(conn, "op", "level"),
+                conn -> dropColumn(conn, "op", "bypassesPlayerLimit"),
+                conn -> addUpdatedAtColumn(conn, "op"),
+                conn -> addCoveringIndex(conn, "op", "idx_op_covering", "isOp")
+        );
+    }
+
+    // MySQL DDL can't run in a transaction, so the checks and ALTERs of the migrations are only safe under this lock.
+    private static void lockMigrations(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            stmt.setString(1, MIGRATION_LOCK);
+            stmt.setInt(2, MIGRATION_LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = stmt.executeQuery()) {
+                // 0 on timeout, NULL on error
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Could not take the migration lock within " + MIGRATION_LOCK_TIMEOUT_SECONDS
+                            + "s, another server may still be migrating.");
+                }
+            }
+        }
+    }
+
+    private static void unlockMigrations(Connection conn) {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, MIGRATION_LOCK);
+            stmt.execute();
+        } catch (SQLException e) {
+            // Not thrown, it would hide why the migration failed. The lock goes away with the session.
+            WhitelistSyncLib.LOGGER.warn("Failed to release the migration lock: " + e.getMessage());
+        }
+    }
+
+    // The uuid storage is a setting rather than a migration, the format in use is recorded instead of a count.
+    private void migrateUuidFormat(Connection conn, SchemaMigrator migrator, String table, String coveringIndex, String flagColumn) throws SQLException {
+        String component = table + ".uuid";
+        int format = binaryUuids ? UUID_FORMAT_BINARY : UUID_FORMAT_TEXT;
+        if (migrator.version(component) != format) {
+            migrateUuidColumn(conn, table, coveringIndex);
+            addCoveringIndex(conn, table, coveringIndex, flagColumn);
+            migrator.record(conn, component, format);
+        }
+    }
+
+    private void dropColumn(Connection conn, String table, String column) throws SQLException {
+        if (columnExists(conn, table, column)) {
+            execute(conn, "ALTER TABLE " + databaseName + "." + table + " DROP COLUMN `" + column + "`");
+            WhitelistSyncLib.LOGGER.info("Removed unused " + table + " table \"" + column + "\" column.");
+        }
+    }
+
+    // Adds the updated_at column and its index to a table that predates the change feed.
+    private void addUpdatedAtColumn(Connection conn, String table) throws SQLException {
+        if (!columnExists(conn, table, "updated_at")) {
+            execute(conn, "ALTER TABLE " + databaseName + "." + table + " ADD COLUMN " + UPDATED_AT_COLUMN + ", "
+                    + "ADD INDEX `idx_" + table + "_updated_at` (`updated_at`)");
+            WhitelistSyncLib.LOGGER.info("Added \"updated_at\" column to " + table + " table.");
+        }
+    }
+
+    private String uuidColumnType() {
+        return binaryUuids ? "BINARY(16)" : "VARCHAR(60)";
+    }
+
+    // Converts the uuid primary key in place when it doesn't match the configured storage format.
+    private void migrateUuidColumn(Connection conn, String table, String coveringIndex) throws SQLException {
+        String sql = "SELECT DATA_TYPE AS type " +
+                "FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_SCHEMA = '" + databaseName + "' AND TABLE_NAME = '" + table + "' AND COLUMN_NAME = 'uuid'";
+        String type;
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            type = rs.next() ? rs.getString("type") : null;
+        }
+
+        boolean isBinary = "binary".equalsIgnoreCase(type);
+        if (type == null || isBinary == binaryUuids) {
+            return;
+        }
+
+        String qualified = databaseName + "." + table;
+        String convert = binaryUuids
+                ? "IF(LENGTH(REPLACE(`uuid`, '-', '')) = 32, UNHEX(REPLACE(`uuid`, '-', '')), NULL)"
+                : "LOWER(CONCAT_WS('-', HEX(SUBSTRING(`uuid`, 1, 4)), HEX(SUBSTRING(`uuid`, 5, 2)), "
+                + "HEX(SUBSTRING(`uuid`, 7, 2)), HEX(SUBSTRING(`uuid`, 9, 2)), HEX(SUBSTRING(`uuid`, 11, 6))))";
+
+        // Left over from an interrupted migration
+        if (columnExists(conn, table, "uuid_new")) {
+            execute(conn, "ALTER TABLE " + qualified + " DROP COLUMN `uuid_new`");
+        }
+
+        execute(conn, "ALTER TABLE " + qualified + " ADD COLUMN `uuid_new` " + uuidColumnType() + " NULL AFTER `uuid`");
+        execute(conn, "UPDATE " + qualified + " SET `uuid_new` = " + convert);
+
+        // Rows that never held a valid uuid can't be converted
+        int dropped;
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM " + qualified + " WHERE `uuid_new` IS NULL")) {
+            dropped = delete.executeUpdate();
+        }
+        if (dropped > 0) {
+            WhitelistSyncLib.LOGGER.warn("Dropped " + dropped + " rows with an invalid uuid from " + table + " table.");
+        }
+
+        // The covering index contains the old column, it is recreated afterwards
+        String dropIndex = indexExists(conn, table, coveringIndex) ? "DROP INDEX `" + coveringIndex + "`, " : "";
+        execute(conn, "ALTER TABLE " + qualified + " " + dropIndex
+                + "DROP PRIMARY KEY, "
+                + "DROP COLUMN `uuid`, "
+                + "CHANGE COLUMN `uuid_new` `uuid` " + uuidColumnType() + " NOT NULL FIRST, "
+                + "ADD PRIMARY KEY (`uuid`)");
+
+        WhitelistSyncLib.LOGGER.info("Converted " + table + " table uuid column to " + uuidColumnType() + ".");
+    }
+
+    // Lets the list queries (flag, uuid, name) be answered from the index alone.
+    private void addCoveringIndex(Connection conn, String table, String index, String flagColumn) throws SQLException {
+        if (!indexExists(conn, table, index)) {
+            execute(conn, "ALTER TABLE " + databaseName + "." + table
+                    + " ADD INDEX `" + index + "` (`" + flagColumn + "`, `uuid`, `name`)");
+            WhitelistSyncLib.LOGGER.info("Added \"" + index + "\" index to " + table + " table.");
+        }
+    }
+
+    private boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        return count(conn, "SELECT COUNT(*) AS count " +
+                "FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_SCHEMA = '" + databaseName + "' AND TABLE_NAME = '" + table + "' AND COLUMN_NAME = '" + column + "'") > 0;
+    }
+
+    private boolean indexExists(Connection conn, String table, String index) throws SQLException {
+        return count(conn, "SELECT COUNT(*) AS count " +
+                "FROM INFORMATION_SCHEMA.STATISTICS " +
+                "WHERE TABLE_SCHEMA = '" + databaseName + "' AND TABLE_NAME = '" + table + "' AND INDEX_NAME = '" + index + "'") > 0;
+    }
+
+    @Override
+    public boolean tryAcquireSyncLease(String nodeId, long leaseMillis) {
+        try (Connection conn = getConnection()) {
+            return SyncStateTable.tryAcquireLease(conn, stateTable, nodeId, leaseMillis);
+        } catch (SQLException e) {
+            WhitelistSyncLib.LOGGER.error("Error acquiring the sync lease!");
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+        }
+        return false;
+    }
+
+    @Override
+    public long publishChangeDigest() {
+        try (Connection conn = getConnection()) {
+            long digest = probeDigest(conn, digestWhitelistSql, 0).databaseHash();
+            if (this.syncingOpList) {
+                digest = digest * 31 + probeDigest(conn, digestOpsSql, 0).databaseHash();
+            }
+            // 0 is reserved for unknown
+            digest = digest == 0 ? 1 : digest;
+            SyncStateTable.writeDigest(conn, stateTable, digest);
+            return digest;
+        } catch (SQLException e) {
+            WhitelistSyncLib.LOGGER.error("Error publishing the change digest!");
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+        }
+        return 0;
+    }
+
+    @Override
+    public long readChangeDigest() {
+        try (Connection conn = getConnection()) {
+            long digest = SyncStateTable.readDigest(conn, stateTable);
+            if (digest != lastChangeDigest) {
+                // Another server wrote, the sync that follows must see it even if the replicas don't yet
+                lastChangeDigest = digest;
+                replicas.pinToPrimary();
+            }
+            return digest;
+        } catch (SQLException e) {
+            WhitelistSyncLib.LOGGER.error("Error reading the change digest!");
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+        }
+        return 0;
+    }
+
+    // Row count, active rows and newest change of a table, checked before reading it in full.
+    private static SyncDigest probeDigest(Connection conn, String sql, long local) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            Timestamp newest = rs.getTimestamp(3);
+            return new SyncDigest(rs.getLong(1), rs.getLong(2), newest != null ? newest.getTime() : 0, local);
+        }
+    }
+
+    private static int count(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt("count");
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.execute();
+        }
+    }
+
+    private void bindUuid(PreparedStatement stmt, int index, long most, long least) throws SQLException {
+        if (binaryUuids) {
+            stmt.setBytes(index, UuidCodec.toBytes(most, least));
+        } else {
+            stmt.setString(index, UuidCodec.toString(most, least));
+        }
+    }
+
+    private void bindUuid(PreparedStatement stmt, int index, UUID uuid) throws SQLException {
+        bindUuid(stmt, index, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    // Reads the uuid column into out[0] (most) and out[1] (least) without creating a UUID.
+    private void readUuid(ResultSet rs, long[] out) throws SQLException {
+        if (binaryUuids) {
+            byte[] bytes = rs.getBytes("uuid");
+            out[0] = UuidCodec.mostFromBytes(bytes);
+            out[1] = UuidCodec.leastFromBytes(bytes);
+        } else {
+            String rawUuid = rs.getString("uuid");
+            out[0] = UuidCodec.parseMost(rawUuid);
+            out[1] = UuidCodec.parseLeast(rawUuid);
+        }
+    }
+
     @Override
     public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
         // ArrayList for whitelisted players.
         ArrayList<WhitelistedPlayer> whitelistedPlayers = new ArrayList<>();
+        streamWhitelistedPlayersFromDatabase(whitelistedPlayers::add);
+        return whitelistedPlayers;
+    }
 
-        try {
+    @Override
+    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+        // ArrayList for opped players.
+        ArrayList<OppedPlayer> oppedPlayers = new ArrayList<>();
+        streamOppedPlayersFromDatabase(oppedPlayers::add);
+        return oppedPlayers;
+    }
+
+    @Override
+    public boolean streamWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return streamWhitelist(selectWhitelistSql, false, consumer);
+    }
+
+    @Override
+    public boolean streamAllWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return streamWhitelist(syncWhitelistSql, true, consumer);
+    }
+
+    @Override
+    public boolean streamOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return streamOps(selectOpsSql, false, consumer);
+    }
+
+    @Override
+    public boolean streamAllOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return streamOps(syncOpsSql, true, consumer);
+    }
+
+    // With tombstones the query reads every row and its flag, otherwise only the active rows.
+    // Those reads feed a merge that writes back, so they are never served by a lagging replica.
+    private boolean streamWhitelist(String sql, boolean tombstones, Consumer<WhitelistedPlayer> consumer) {
+        try (Connection conn = tombstones ? getConnection() : getReadConnection()) {
             // Keep track of records.
             int records = 0;
 
-            // Connect to database.
-            Connection conn = DriverManager.getConnection(url, username, password);
-            long startTime = System.currentTimeMillis();
+            long startTime = System.nanoTime();
 
-            String sql = "SELECT uuid, name FROM " + databaseName + ".whitelist WHERE whitelisted = true;";
             PreparedStatement stmt = conn.prepareStatement(sql);
+            // Served from a server side cursor, see useCursorFetch in the url
+            stmt.setFetchSize(fetchSize);
             ResultSet rs = stmt.executeQuery();
 
-            // Add queried results to arraylist.
+            // Hand each row over as soon as it is read.
+            long[] uuid = new long[2];
             while (rs.next()) {
-                whitelistedPlayers.add(new WhitelistedPlayer(rs.getString("uuid"), rs.getString("name"), true));
+                readUuid(rs, uuid);
+                boolean whitelisted = !tombstones || rs.getBoolean("whitelisted");
+                consumer.accept(new WhitelistedPlayer(uuid[0], uuid[1], rs.getString("name"), whitelisted));
                 records++;
             }
 
             // Time taken
-            long timeTaken = System.currentTimeMillis() - startTime;
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.GET_WHITELIST, timeTaken);
+            metrics.recordRowsRead(Operation.GET_WHITELIST, records);
 
-            WhitelistSyncLib.LOGGER.debug("Database pulled whitelisted players | Took " + timeTaken + "ms | Read " + records + " records.");
+            WhitelistSyncLib.LOGGER.debug("Database pulled whitelisted players | Took {}ms | Read {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
 
             rs.close();
             stmt.close();
-            conn.close();
+            return true;
         } catch (SQLException e) {
+            metrics.recordError(Operation.GET_WHITELIST);
             // Something is wrong...
             WhitelistSyncLib.LOGGER.error("Error querying whitelisted players from database!");
             WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
         }
-        return whitelistedPlayers;
+        return false;
     }
 
-    @Override
-    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
-        // ArrayList for opped players.
-        ArrayList<OppedPlayer> oppedPlayers = new ArrayList<>();
-
+    private boolean streamOps(String sql, boolean tombstones, Consumer<OppedPlayer> consumer) {
         if (this.syncingOpList) {
-            try {
+            try (Connection conn = tombstones ? getConnection() : getReadConnection()) {
                 // Keep track of records.
                 int records = 0;
 
-                // Connect to database.
-                Connection conn = DriverManager.getConnection(url, username, password);
-                long startTime = System.currentTimeMillis();
+                long startTime = System.nanoTime();
 
-                String sql = "SELECT uuid, name FROM " + databaseName + ".op WHERE isOp = true;";
                 PreparedStatement stmt = conn.prepareStatement(sql);
+                stmt.setFetchSize(fetchSize);
                 ResultSet rs = stmt.executeQuery();
 
-                // Add queried results to arraylist.
+                // Hand each row over as soon as it is read.
+                long[] uuid = new long[2];
                 while (rs.next()) {
-                    oppedPlayers.add(new OppedPlayer(rs.getString("uuid"), rs.getString("name"), true));
+                    readUuid(rs, uuid);
+                    boolean op = !tombstones || rs.getBoolean("isOp");
+                    consumer.accept(new OppedPlayer(uuid[0], uuid[1], rs.getString("name"), op));
                     records++;
                 }
 
                 // Time taken
-                long timeTaken = System.currentTimeMillis() - startTime;
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.GET_OPS, timeTaken);
+                metrics.recordRowsRead(Operation.GET_OPS, records);
 
-                WhitelistSyncLib.LOGGER.debug("Database pulled opped players | Took " + timeTaken + "ms | Read " + records + " records.");
+                WhitelistSyncLib.LOGGER.debug("Database pulled opped players | Took {}ms | Read {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
 
                 rs.close();
                 stmt.close();
-                conn.close();
+                return true;
             } catch (SQLException e) {
+                metrics.recordError(Operation.GET_OPS);
                 WhitelistSyncLib.LOGGER.error("Error querying opped players from database!");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
             }
@@ -240,38 +679,34 @@ public class MySqlService implements BaseService {
                     + "Please enable it and restart the server to use this feature.");
         }
 
-        return oppedPlayers;
+        return false;
     }
 
     @Override
     public boolean copyLocalWhitelistedPlayersToDatabase(ArrayList<WhitelistedPlayer> whitelistedPlayers) {
-        // TODO: Start job on thread to avoid lag?
         // Keep track of records.
         int records = 0;
-        try {
-            // Connect to database.
-            Connection conn = DriverManager.getConnection(url, username, password);
-            long startTime = System.currentTimeMillis();
-            // Loop through local whitelist and insert into database.
-            for (WhitelistedPlayer player : whitelistedPlayers) {
-
-                if (player.getUuid() != null && player.getName() != null) {
-                    PreparedStatement stmt = conn.prepareStatement("INSERT IGNORE INTO " + databaseName + ".whitelist(uuid, name, whitelisted) VALUES (?, ?, true)");
-                    stmt.setString(1, player.getUuid());
-                    stmt.setString(2, player.getName());
-                    stmt.executeUpdate();
-                    stmt.close();
-
-                    records++;
+        replicas.pinToPrimary();
+        try (Connection conn = getConnection()) {
+            long startTime = System.nanoTime();
+            // Insert the local list in batches inside one transaction.
+            records = JdbcBatch.write(conn, copyWhitelistSql, whitelistedPlayers, batchSize, (stmt, player) -> {
+                if (!player.hasUuid() || player.getName() == null) {
+                    return false;
                 }
-            }
+                bindUuid(stmt, 1, player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+                stmt.setString(2, player.getName());
+                return true;
+            });
             // Record time taken.
-            long timeTaken = System.currentTimeMillis() - startTime;
-            WhitelistSyncLib.LOGGER.debug("Whitelist table updated | Took " + timeTaken + "ms | Wrote " + records + " records.");
-            conn.close();
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.COPY_LOCAL_WHITELIST, timeTaken);
+            metrics.recordRowsWritten(Operation.COPY_LOCAL_WHITELIST, records);
+            WhitelistSyncLib.LOGGER.debug("Whitelist table updated | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
 
             return true;
         } catch (SQLException e) {
+            metrics.recordError(Operation.COPY_LOCAL_WHITELIST);
             WhitelistSyncLib.LOGGER.error("Failed to update database with local records.");
             WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
         }
@@ -282,33 +717,29 @@ public class MySqlService implements BaseService {
     @Override
     public boolean copyLocalOppedPlayersToDatabase(ArrayList<OppedPlayer> oppedPlayers) {
         if (this.syncingOpList) {
-            // TODO: Start job on thread to avoid lag?
             // Keep track of records.
             int records = 0;
-            try {
-                // Connect to database.
-                Connection conn = DriverManager.getConnection(url, username, password);
-                long startTime = System.currentTimeMillis();
-                // Loop through local whitelist and insert into database.
-                for (OppedPlayer player : oppedPlayers) {
-
-                    if (player.getUuid() != null && player.getName() != null) {
-                        PreparedStatement stmt = conn.prepareStatement("INSERT IGNORE INTO " + databaseName + ".op(uuid, name, isOp) VALUES (?, ?, true)");
-                        stmt.setString(1, player.getUuid());
-                        stmt.setString(2, player.getName());
-                        stmt.executeUpdate();
-                        stmt.close();
-
-                        records++;
+            replicas.pinToPrimary();
+            try (Connection conn = getConnection()) {
+                long startTime = System.nanoTime();
+                // Insert the local list in batches inside one transaction.
+                records = JdbcBatch.write(conn, copyOpsSql, oppedPlayers, batchSize, (stmt, player) -> {
+                    if (!player.hasUuid() || player.getName() == null) {
+                        return false;
                     }
-                }
+                    bindUuid(stmt, 1, player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+                    stmt.setString(2, player.getName());
+                    return true;
+                });
                 // Record time taken.
-                long timeTaken = System.currentTimeMillis() - startTime;
-                WhitelistSyncLib.LOGGER.debug("Op table updated | Took " + timeTaken + "ms | Wrote " + records + " records.");
-                conn.close();
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.COPY_LOCAL_OPS, timeTaken);
+                metrics.recordRowsWritten(Operation.COPY_LOCAL_OPS, records);
+                WhitelistSyncLib.LOGGER.debug("Op table updated | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
 
                 return true;
             } catch (SQLException e) {
+                metrics.recordError(Operation.COPY_LOCAL_OPS);
                 WhitelistSyncLib.LOGGER.error("Failed to update database with local records.");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
             }
@@ -322,50 +753,71 @@ public class MySqlService implements BaseService {
 
     @Override
     public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
-        try {
+        return copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onUserAdd, onUserRemove, null);
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+        try (Connection conn = getReadConnection()) {
             int records = 0;
 
-            // Open connection
-            Connection conn = DriverManager.getConnection(url, username, password);
-            long startTime = System.currentTimeMillis();
+            long startTime = System.nanoTime();
 
-            String sql = "SELECT name, uuid, whitelisted FROM " + databaseName + ".whitelist";
-            PreparedStatement stmt = conn.prepareStatement(sql);
+            // Without a watermark (or on the first run) the whole table is read
+            long since = watermark != null ? watermark.whitelistQueryBound() : 0;
+
+            // One aggregate row tells whether anything changed since the last sync
+            SyncDigest digest = probeDigest(conn, digestWhitelistSql, SyncDigest.fingerprintWhitelist(localWhitelistedPlayers));
+            // A full read the watermark asks for is never skipped, see SyncWatermark
+            if (digest.equals(whitelistDigest) && (watermark == null || since > 0)) {
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordSyncSkipped(Operation.SYNC_WHITELIST);
+                metrics.recordLatency(Operation.SYNC_WHITELIST, timeTaken);
+                WhitelistSyncLib.LOGGER.debug("Whitelist unchanged since last sync | Took {}ms", TimeUnit.NANOSECONDS.toMillis(timeTaken));
+                return true;
+            }
+
+            PreparedStatement stmt = conn.prepareStatement(since > 0 ? syncWhitelistSinceSql : syncWhitelistSql);
+            stmt.setFetchSize(fetchSize);
+            if (since > 0) {
+                stmt.setTimestamp(1, new Timestamp(since));
+            }
             ResultSet rs = stmt.executeQuery();
 
+            // Index local players once, then diff every row against it.
+            SyncDiff diff = SyncDiff.forWhitelist(localWhitelistedPlayers);
+            int rows = 0;
+            long newest = watermark != null ? watermark.getWhitelistRevision() : 0;
+            long[] uuid = new long[2];
             while (rs.next()) {
-                UUID uuid = UUID.fromString(rs.getString("uuid"));
-                String name = rs.getString("name");
-                int whitelisted = rs.getInt("whitelisted");
-
-                if (whitelisted == 1) {
-                    if (localWhitelistedPlayers.stream().noneMatch(o -> o.getUuid().equals(uuid))) {
-                        try {
-                            onUserAdd.call(uuid, name);
-                            WhitelistSyncLib.LOGGER.debug("Added " + name + " to whitelist.");
-                            records++;
-                        } catch (NullPointerException e) {
-                            WhitelistSyncLib.LOGGER.error("Player is null?");
-                            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
-                        }
-                    }
-                } else {
-                    if (localWhitelistedPlayers.stream().anyMatch(o -> o.getUuid().equals(uuid))) {
-                        onUserRemove.call(uuid, name);
-                        WhitelistSyncLib.LOGGER.debug("Removed " + name + " from whitelist.");
-                        records++;
-                    }
+                rows++;
+                readUuid(rs, uuid);
+                boolean active = rs.getInt("whitelisted") == 1;
+                // Only read the name for rows that actually change something
+                if (diff.isChange(uuid[0], uuid[1], active)) {
+                    diff.accept(uuid[0], uuid[1], rs.getString("name"), active);
                 }
+                newest = Math.max(newest, rs.getTimestamp("updated_at").getTime());
+            }
+            records = diff.apply(onUserAdd, onUserRemove);
+            metrics.recordSyncDiff(Operation.SYNC_WHITELIST, diff.getAdditions().size(), diff.getRemovals().size());
 
+            if (watermark != null) {
+                watermark.setWhitelistRevision(newest);
+                watermark.save();
             }
-            long timeTaken = System.currentTimeMillis() - startTime;
-            WhitelistSyncLib.LOGGER.debug("Copied whitelist database to local | Took " + timeTaken + "ms | Wrote " + records + " records.");
+            whitelistDigest = digest.afterSync(diff);
+
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.SYNC_WHITELIST, timeTaken);
+            metrics.recordRowsRead(Operation.SYNC_WHITELIST, rows);
+            WhitelistSyncLib.LOGGER.debug("Copied whitelist database to local | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
 
             rs.close();
             stmt.close();
-            conn.close();
             return true;
         } catch (SQLException e) {
+            metrics.recordError(Operation.SYNC_WHITELIST);
             WhitelistSyncLib.LOGGER.error("Error querying whitelisted players from database!");
             WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
         }
@@ -375,52 +827,83 @@ public class MySqlService implements BaseService {
 
     @Override
     public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return copyDatabaseOppedPlayersToLocal(localOppedPlayers, onUserAdd, onUserRemove, null);
+    }
+
+    @Override
+    public boolean syncAll(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, ArrayList<OppedPlayer> localOppedPlayers,
+                           IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove) {
+        if (!this.syncingOpList) {
+            return copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onWhitelistAdd, onWhitelistRemove);
+        }
+        // Both tables are read and diffed at the same time on separate pooled connections
+        return ParallelSync.syncAll(this, localWhitelistedPlayers, localOppedPlayers, onWhitelistAdd, onWhitelistRemove, onOpAdd, onOpRemove);
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
         if (this.syncingOpList) {
 
-            try {
+            try (Connection conn = getReadConnection()) {
                 int records = 0;
 
-                // Open connection
-                Connection conn = DriverManager.getConnection(url, username, password);
-                long startTime = System.currentTimeMillis();
+                long startTime = System.nanoTime();
 
-                String sql = "SELECT name, uuid, isOp FROM " + databaseName + ".op";
-                PreparedStatement stmt = conn.prepareStatement(sql);
+                // Without a watermark (or on the first run) the whole table is read
+                long since = watermark != null ? watermark.opQueryBound() : 0;
+
+                // One aggregate row tells whether anything changed since the last sync
+                SyncDigest digest = probeDigest(conn, digestOpsSql, SyncDigest.fingerprintOps(localOppedPlayers));
+                // A full read the watermark asks for is never skipped, see SyncWatermark
+                if (digest.equals(opDigest) && (watermark == null || since > 0)) {
+                    long timeTaken = System.nanoTime() - startTime;
+                    metrics.recordSyncSkipped(Operation.SYNC_OPS);
+                    metrics.recordLatency(Operation.SYNC_OPS, timeTaken);
+                    WhitelistSyncLib.LOGGER.debug("Op list unchanged since last sync | Took {}ms", TimeUnit.NANOSECONDS.toMillis(timeTaken));
+                    return true;
+                }
+
+                PreparedStatement stmt = conn.prepareStatement(since > 0 ? syncOpsSinceSql : syncOpsSql);
+                stmt.setFetchSize(fetchSize);
+                if (since > 0) {
+                    stmt.setTimestamp(1, new Timestamp(since));
+                }
                 ResultSet rs = stmt.executeQuery();
 
+                // Index local players once, then diff every row against it.
+                SyncDiff diff = SyncDiff.forOps(localOppedPlayers);
+                int rows = 0;
+                long newest = watermark != null ? watermark.getOpRevision() : 0;
+                long[] uuid = new long[2];
                 while (rs.next()) {
-                    UUID uuid = UUID.fromString(rs.getString("uuid"));
-                    String name = rs.getString("name");
-                    int opped = rs.getInt("isOp");
-
-                    if (opped == 1) {
-                        if (localOppedPlayers.stream().noneMatch(o -> o.getUuid().equals(uuid))) {
-                            try {
-                                onUserAdd.call(uuid, name);
-                                WhitelistSyncLib.LOGGER.debug("Opped " + name + ".");
-                                records++;
-                            } catch (NullPointerException e) {
-                                WhitelistSyncLib.LOGGER.error("Player is null?");
-                                WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
-                            }
-                        }
-                    } else {
-                        if (localOppedPlayers.stream().anyMatch(o -> o.getUuid().equals(uuid))) {
-                            onUserRemove.call(uuid, name);
-                            WhitelistSyncLib.LOGGER.debug("Deopped " + name + ".");
-                            records++;
-                        }
+                    rows++;
+                    readUuid(rs, uuid);
+                    boolean active = rs.getInt("isOp") == 1;
+                    // Only read the name for rows that actually change something
+                    if (diff.isChange(uuid[0], uuid[1], active)) {
+                        diff.accept(uuid[0], uuid[1], rs.getString("name"), active);
                     }
+                    newest = Math.max(newest, rs.getTimestamp("updated_at").getTime());
+                }
+                records = diff.apply(onUserAdd, onUserRemove);
+                metrics.recordSyncDiff(Operation.SYNC_OPS, diff.getAdditions().size(), diff.getRemovals().size());
 
+                if (watermark != null) {
+                    watermark.setOpRevision(newest);
+                    watermark.save();
                 }
-                long timeTaken = System.currentTimeMillis() - startTime;
-                WhitelistSyncLib.LOGGER.debug("Copied op database to local | Took " + timeTaken + "ms | Wrote " + records + " records.");
+                opDigest = digest.afterSync(diff);
+
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.SYNC_OPS, timeTaken);
+                metrics.recordRowsRead(Operation.SYNC_OPS, rows);
+                WhitelistSyncLib.LOGGER.debug("Copied op database to local | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
 
                 rs.close();
                 stmt.close();
-                conn.close();
                 return true;
             } catch (SQLException e) {
+                metrics.recordError(Operation.SYNC_OPS);
                 WhitelistSyncLib.LOGGER.error("Error querying opped players from database!");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
             }
@@ -434,25 +917,25 @@ public class MySqlService implements BaseService {
 
     @Override
     public boolean addWhitelistPlayer(UUID uuid, String name) {
-        try {
-            // Open connection=
-            Connection conn = DriverManager.getConnection(url, username, password);
-            long startTime = System.currentTimeMillis();
+        replicas.pinToPrimary();
+        try (Connection conn = getConnection()) {
+            long startTime = System.nanoTime();
 
-            String sql = "REPLACE INTO " + databaseName + ".whitelist(uuid, name, whitelisted) VALUES (?, ?, true)";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setString(1, uuid.toString());
+            PreparedStatement stmt = conn.prepareStatement(addWhitelistSql);
+            bindUuid(stmt, 1, uuid);
             stmt.setString(2, name);
             stmt.executeUpdate();
 
             // Time taken.
-            long timeTaken = System.currentTimeMillis() - startTime;
-            WhitelistSyncLib.LOGGER.debug("Added " + name + " to whitelist | Took " + timeTaken + "ms");
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.ADD_WHITELIST, timeTaken);
+            metrics.recordRowsWritten(Operation.ADD_WHITELIST, 1);
+            WhitelistSyncLib.LOGGER.debug("Added {} to whitelist | Took {}ms", name, TimeUnit.NANOSECONDS.toMillis(timeTaken));
             stmt.close();
-            conn.close();
             return true;
 
         } catch (SQLException e) {
+            metrics.recordError(Operation.ADD_WHITELIST);
             WhitelistSyncLib.LOGGER.error("Error adding " + name + " to whitelist database!");
             WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
         }
@@ -463,25 +946,25 @@ public class MySqlService implements BaseService {
     @Override
     public boolean addOppedPlayer(UUID uuid, String name) {
         if (this.syncingOpList) {
-            try {
-                // Open connection=
-                Connection conn = DriverManager.getConnection(url, username, password);
-                long startTime = System.currentTimeMillis();
+            replicas.pinToPrimary();
+            try (Connection conn = getConnection()) {
+                long startTime = System.nanoTime();
 
-                String sql = "REPLACE INTO " + databaseName + ".op(uuid, name, isOp) VALUES (?, ?, true)";
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                stmt.setString(1, uuid.toString());
+                PreparedStatement stmt = conn.prepareStatement(addOpSql);
+                bindUuid(stmt, 1, uuid);
                 stmt.setString(2, name);
                 stmt.executeUpdate();
 
                 // Time taken.
-                long timeTaken = System.currentTimeMillis() - startTime;
-                WhitelistSyncLib.LOGGER.debug("Database opped " + name + " | Took " + timeTaken + "ms");
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.ADD_OP, timeTaken);
+                metrics.recordRowsWritten(Operation.ADD_OP, 1);
+                WhitelistSyncLib.LOGGER.debug("Database opped {} | Took {}ms", name, TimeUnit.NANOSECONDS.toMillis(timeTaken));
                 stmt.close();
-                conn.close();
                 return true;
 
             } catch (SQLException e) {
+                metrics.recordError(Operation.ADD_OP);
                 WhitelistSyncLib.LOGGER.error("Error opping " + name + " !");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
             }
@@ -495,25 +978,25 @@ public class MySqlService implements BaseService {
 
     @Override
     public boolean removeWhitelistPlayer(UUID uuid, String name) {
-        try {
-            // Open connection=
-            Connection conn = DriverManager.getConnection(url, username, password);
-            long startTime = System.currentTimeMillis();
+        replicas.pinToPrimary();
+        try (Connection conn = getConnection()) {
+            long startTime = System.nanoTime();
 
-            String sql = "REPLACE INTO " + databaseName + ".whitelist(uuid, name, whitelisted) VALUES (?, ?, false)";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setString(1, uuid.toString());
+            PreparedStatement stmt = conn.prepareStatement(removeWhitelistSql);
+            bindUuid(stmt, 1, uuid);
             stmt.setString(2, name);
             stmt.executeUpdate();
 
             // Time taken.
-            long timeTaken = System.currentTimeMillis() - startTime;
-            WhitelistSyncLib.LOGGER.debug("Removed " + name + " from whitelist | Took " + timeTaken + "ms");
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.REMOVE_WHITELIST, timeTaken);
+            metrics.recordRowsWritten(Operation.REMOVE_WHITELIST, 1);
+            WhitelistSyncLib.LOGGER.debug("Removed {} from whitelist | Took {}ms", name, TimeUnit.NANOSECONDS.toMillis(timeTaken));
             stmt.close();
-            conn.close();
             return true;
 
         } catch (SQLException e) {
+            metrics.recordError(Operation.REMOVE_WHITELIST);
             WhitelistSyncLib.LOGGER.error("Error removing " + name + " to whitelist database!");
             WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
         }
@@ -524,25 +1007,25 @@ public class MySqlService implements BaseService {
     @Override
     public boolean removeOppedPlayer(UUID uuid, String name) {
         if (this.syncingOpList) {
-            try {
-                // Open connection=
-                Connection conn = DriverManager.getConnection(url, username, password);
-                long startTime = System.currentTimeMillis();
+            replicas.pinToPrimary();
+            try (Connection conn = getConnection()) {
+                long startTime = System.nanoTime();
 
-                String sql = "REPLACE INTO " + databaseName + ".op(uuid, name, isOp) VALUES (?, ?, false)";
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                stmt.setString(1, uuid.toString());
+                PreparedStatement stmt = conn.prepareStatement(removeOpSql);
+                bindUuid(stmt, 1, uuid);
                 stmt.setString(2, name);
                 stmt.executeUpdate();
 
                 // Time taken.
-                long timeTaken = System.currentTimeMillis() - startTime;
-                WhitelistSyncLib.LOGGER.debug("Deopped " + name + " | Took " + timeTaken + "ms");
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.REMOVE_OP, timeTaken);
+                metrics.recordRowsWritten(Operation.REMOVE_OP, 1);
+                WhitelistSyncLib.LOGGER.debug("Deopped {} | Took {}ms", name, TimeUnit.NANOSECONDS.toMillis(timeTaken));
                 stmt.close();
-                conn.close();
                 return true;
 
             } catch (SQLException e) {
+                metrics.recordError(Operation.REMOVE_OP);
                 WhitelistSyncLib.LOGGER.error("Error deopping " + name + ".");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
             }
@@ -553,4 +1036,73 @@ public class MySqlService implements BaseService {
 
         return false;
     }
+
+    @Override
+    public boolean writeWhitelistedPlayers(Collection<WhitelistedPlayer> players) {
+        replicas.pinToPrimary();
+        try (Connection conn = getConnection()) {
+            long startTime = System.nanoTime();
+            int records = JdbcBatch.write(conn, writeWhitelistSql, players, batchSize, (stmt, player) -> {
+                if (!player.hasUuid() || player.getName() == null) {
+                    return false;
+                }
+                bindUuid(stmt, 1, player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+                stmt.setString(2, player.getName());
+                stmt.setBoolean(3, player.isWhitelisted());
+                return true;
+            });
+
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.WRITE_WHITELIST, timeTaken);
+            metrics.recordRowsWritten(Operation.WRITE_WHITELIST, records);
+            WhitelistSyncLib.LOGGER.debug("Wrote whitelist changes | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
+            return true;
+        } catch (SQLException e) {
+            metrics.recordError(Operation.WRITE_WHITELIST);
+            WhitelistSyncLib.LOGGER.error("Error writing whitelist changes to database!");
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean writeOppedPlayers(Collection<OppedPlayer> players) {
+        if (this.syncingOpList) {
+            replicas.pinToPrimary();
+            try (Connection conn = getConnection()) {
+                long startTime = System.nanoTime();
+                int records = JdbcBatch.write(conn, writeOpsSql, players, batchSize, (stmt, player) -> {
+                    if (!player.hasUuid() || player.getName() == null) {
+                        return false;
+                    }
+                    bindUuid(stmt, 1, player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+                    stmt.setString(2, player.getName());
+                    stmt.setBoolean(3, player.isOp());
+                    return true;
+                });
+
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.WRITE_OPS, timeTaken);
+                metrics.recordRowsWritten(Operation.WRITE_OPS, records);
+                WhitelistSyncLib.LOGGER.debug("Wrote op changes | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
+                return true;
+            } catch (SQLException e) {
+                metrics.recordError(Operation.WRITE_OPS);
+                WhitelistSyncLib.LOGGER.error("Error writing op changes to database!");
+                WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+            }
+        } else {
+            WhitelistSyncLib.LOGGER.error("Op list syncing is currently disabled in your config. "
+                    + "Please enable it and restart the server to use this feature.");
+        }
+
+        return false;
+    }
+
+    @Override
+    public void shutdown() {
+        pool.close();
+        replicas.close();
+    }
 }
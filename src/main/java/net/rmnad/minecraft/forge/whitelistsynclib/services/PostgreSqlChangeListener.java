@@ -0,0 +1,227 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.services;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.UuidCodec;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncDiff;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Applies changes pushed by the PostgreSQL triggers instead of polling the tables.
+ *
+ * A background thread LISTENs on one dedicated connection and applies every notified row through
+ * the given callbacks, usually within a fraction of a second of the write on another server.
+ * Notifications are lost while the connection is down, so a full sync runs after every
+ * (re)connect and periodically as a safety net.
+ *
+ * Callbacks are called from the listener thread, not the server thread.
+ */
+public class PostgreSqlChangeListener implements AutoCloseable {
+
+    public static final long DEFAULT_FULL_SYNC_INTERVAL_MILLIS = 10 * 60 * 1000;
+
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 30000;
+
+    private final PostgreSqlService service;
+
+    private final Supplier<ArrayList<WhitelistedPlayer>> localWhitelist;
+    private final IOnUserAdd onWhitelistAdd;
+    private final IOnUserRemove onWhitelistRemove;
+
+    private final Supplier<ArrayList<OppedPlayer>> localOps;
+    private final IOnUserAdd onOpAdd;
+    private final IOnUserRemove onOpRemove;
+
+    private final long fullSyncIntervalMillis;
+
+    private final Thread thread;
+    private volatile boolean running = false;
+    private volatile Connection connection;
+
+    /**
+     * @param localWhitelist current local whitelist, used to skip notifications that change nothing
+     * @param localOps current local op list, null to ignore op list changes
+     * @param fullSyncIntervalMillis time between safety net full syncs, 0 to only sync on (re)connect
+     */
+    public PostgreSqlChangeListener(PostgreSqlService service,
+                                    Supplier<ArrayList<WhitelistedPlayer>> localWhitelist, IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove,
+                                    Supplier<ArrayList<OppedPlayer>> localOps, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove,
+                                    long fullSyncIntervalMillis) {
+        this.service = service;
+        this.localWhitelist = localWhitelist;
+        this.onWhitelistAdd = onWhitelistAdd;
+        this.onWhitelistRemove = onWhitelistRemove;
+        this.localOps = service.isSyncingOpList() ? localOps : null;
+        this.onOpAdd = onOpAdd;
+        this.onOpRemove = onOpRemove;
+        this.fullSyncIntervalMillis = fullSyncIntervalMillis;
+
+        this.thread = new Thread(this::run, "WhitelistSync-PgListener");
+        this.thread.setDaemon(true);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread.start();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+
+        thread.interrupt();
+        try {
+            thread.join(POLL_TIMEOUT_MILLIS * 4L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeConnection();
+    }
+
+    private void run() {
+        long reconnectDelay = 1000;
+
+        while (running) {
+            try {
+                connect();
+                reconnectDelay = 1000;
+
+                // Anything written while we weren't listening has to be picked up by a full read
+                fullSync();
+                long nextFullSync = nextFullSync();
+
+                while (running) {
+                    PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null && notifications.length > 0) {
+                        apply(notifications);
+                    }
+
+                    if (System.currentTimeMillis() >= nextFullSync) {
+                        fullSync();
+                        nextFullSync = nextFullSync();
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    break;
+                }
+                WhitelistSyncLib.LOGGER.error("Lost PostgreSQL change listener connection, reconnecting in " + reconnectDelay + "ms.");
+                WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+            }
+
+            closeConnection();
+            try {
+                Thread.sleep(reconnectDelay);
+            } catch (InterruptedException e) {
+                break;
+            }
+            reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MILLIS);
+        }
+
+        closeConnection();
+    }
+
+    private void connect() throws SQLException {
+        connection = service.openListenerConnection();
+        // LISTEN only takes effect once committed
+        connection.setAutoCommit(true);
+        // The triggers are installed once by initializeDatabase, see PostgreSqlService.listMigrations
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("LISTEN " + PostgreSqlService.NOTIFY_CHANNEL);
+        }
+        WhitelistSyncLib.LOGGER.info("Listening for PostgreSQL whitelist changes.");
+    }
+
+    private void closeConnection() {
+        Connection conn = connection;
+        connection = null;
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                WhitelistSyncLib.LOGGER.debug("Error closing PostgreSQL change listener connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    private long nextFullSync() {
+        return fullSyncIntervalMillis > 0 ? System.currentTimeMillis() + fullSyncIntervalMillis : Long.MAX_VALUE;
+    }
+
+    private void fullSync() {
+        service.copyDatabaseWhitelistedPlayersToLocal(localWhitelist.get(), onWhitelistAdd, onWhitelistRemove);
+        if (localOps != null) {
+            service.copyDatabaseOppedPlayersToLocal(localOps.get(), onOpAdd, onOpRemove);
+        }
+    }
+
+    // Diffs one poll's worth of notifications against the local lists, so duplicates and our own writes are no-ops.
+    private void apply(PGNotification[] notifications) {
+        SyncDiff whitelistDiff = null;
+        SyncDiff opDiff = null;
+
+        for (PGNotification notification : notifications) {
+            // table|active|uuid|name, names can't contain '|'
+            String[] parts = notification.getParameter().split("\\|", 4);
+            if (parts.length != 4) {
+                WhitelistSyncLib.LOGGER.warn("Ignoring malformed change notification: " + notification.getParameter());
+                continue;
+            }
+
+            long most;
+            long least;
+            try {
+                most = UuidCodec.parseMost(parts[2]);
+                least = UuidCodec.parseLeast(parts[2]);
+            } catch (IllegalArgumentException e) {
+                WhitelistSyncLib.LOGGER.warn("Ignoring change notification with invalid uuid: " + parts[2]);
+                continue;
+            }
+            boolean active = Boolean.parseBoolean(parts[1]);
+
+            if ("whitelist".equals(parts[0])) {
+                if (whitelistDiff == null) {
+                    whitelistDiff = SyncDiff.forWhitelist(localWhitelist.get());
+                }
+                whitelistDiff.accept(most, least, parts[3], active);
+            } else if ("oplist".equals(parts[0]) && localOps != null) {
+                if (opDiff == null) {
+                    opDiff = SyncDiff.forOps(localOps.get());
+                }
+                opDiff.accept(most, least, parts[3], active);
+            }
+        }
+
+        if (whitelistDiff != null && !whitelistDiff.isEmpty()) {
+            int records = whitelistDiff.apply(onWhitelistAdd, onWhitelistRemove);
+            WhitelistSyncLib.LOGGER.debug("Applied {} whitelist changes from PostgreSQL notifications.", records);
+        }
+        if (opDiff != null && !opDiff.isEmpty()) {
+            int records = opDiff.apply(onOpAdd, onOpRemove);
+            WhitelistSyncLib.LOGGER.debug("Applied {} op list changes from PostgreSQL notifications.", records);
+        }
+    }
+}
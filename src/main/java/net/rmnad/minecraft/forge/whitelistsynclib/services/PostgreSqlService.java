@@ -3,12 +3,28 @@ package net.rmnad.minecraft.forge.whitelistsynclib.services;
 import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
 import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
 import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.Operation;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.ServiceMetrics;
 import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.UuidCodec;
 import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.pool.ConnectionPool;
+import net.rmnad.minecraft.forge.whitelistsynclib.pool.ConnectionPoolConfig;
+import net.rmnad.minecraft.forge.whitelistsynclib.pool.ReplicaConfig;
+import net.rmnad.minecraft.forge.whitelistsynclib.pool.ReplicaSet;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.ParallelSync;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncDiff;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncDigest;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncWatermark;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * Service for PostgreSQL databases
@@ -17,18 +33,104 @@ import java.util.UUID;
  */
 public class PostgreSqlService implements BaseService {
 
+	// Channel the change triggers publish to, see PostgreSqlChangeListener
+	static final String NOTIFY_CHANNEL = "whitelistsync_changes";
+	// Rows per round trip when reading whole tables, keeps memory flat for large tables
+	private static final int DEFAULT_FETCH_SIZE = 1000;
+
+	// Hot path SQL, prepared on the server once per connection (see prepareThreshold in the url)
+	private static final String SELECT_WHITELIST_SQL = "SELECT uuid, playername, is_whitelisted FROM public.whitelist";
+	private static final String SELECT_OPS_SQL = "SELECT uuid, playername, is_opped FROM public.oplist";
+	private static final String COPY_WHITELIST_SQL = "INSERT INTO public.whitelist(uuid, playername, is_whitelisted) VALUES (?, ?, ?) ON CONFLICT (uuid) DO NOTHING";
+	private static final String COPY_OPS_SQL = "INSERT INTO public.oplist(uuid, playername, is_opped) VALUES (?, ?, ?) ON CONFLICT (uuid) DO NOTHING";
+	// One round trip per add or remove, a blank name keeps the one already stored
+	private static final String UPSERT_WHITELIST_SQL = "INSERT INTO public.whitelist AS t (uuid, playername, is_whitelisted) VALUES (?, COALESCE(?, ''), ?)"
+			+ " ON CONFLICT (uuid) DO UPDATE SET playername = COALESCE(NULLIF(EXCLUDED.playername, ''), t.playername),"
+			+ " is_whitelisted = EXCLUDED.is_whitelisted, updated_at = clock_timestamp()";
+	private static final String UPSERT_OPS_SQL = "INSERT INTO public.oplist AS t (uuid, playername, is_opped) VALUES (?, COALESCE(?, ''), ?)"
+			+ " ON CONFLICT (uuid) DO UPDATE SET playername = COALESCE(NULLIF(EXCLUDED.playername, ''), t.playername),"
+			+ " is_opped = EXCLUDED.is_opped, updated_at = clock_timestamp()";
+	private static final String DIGEST_WHITELIST_SQL = "SELECT COUNT(*), COALESCE(SUM(CASE WHEN is_whitelisted THEN 1 ELSE 0 END), 0), MAX(updated_at) FROM public.whitelist";
+	private static final String DIGEST_OPS_SQL = "SELECT COUNT(*), COALESCE(SUM(CASE WHEN is_opped THEN 1 ELSE 0 END), 0), MAX(updated_at) FROM public.oplist";
+	private static final String SYNC_WHITELIST_SQL = "SELECT uuid, playername, is_whitelisted, updated_at FROM public.whitelist";
+	private static final String SYNC_WHITELIST_SINCE_SQL = SYNC_WHITELIST_SQL + " WHERE updated_at >= ?";
+	private static final String SYNC_OPS_SQL = "SELECT uuid, playername, is_opped, updated_at FROM public.oplist";
+	private static final String SYNC_OPS_SINCE_SQL = SYNC_OPS_SQL + " WHERE updated_at >= ?";
+	private static final String STATE_TABLE = "public." + SyncStateTable.TABLE;
+	private static final String SCHEMA_TABLE = "public." + SchemaMigrator.TABLE;
+
 	private final boolean syncingOpList;
 	
 	private final String url;
 	private final String username;
 	private final String password;
 
+	private final ConnectionPool pool;
+	// Empty unless replicas are configured, then sync and list reads go there
+	private final ReplicaSet replicas;
+
+	private int batchSize = JdbcBatch.DEFAULT_BATCH_SIZE;
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+
+	// What the last successful sync of each table saw, a matching probe skips the next one
+	private volatile SyncDigest whitelistDigest;
+	private volatile SyncDigest opDigest;
+	// Last digest seen by readChangeDigest
+	private volatile long lastChangeDigest;
+
+	private volatile ServiceMetrics metrics = ServiceMetrics.NOOP;
+
 	public PostgreSqlService(String databaseName, String ip, int port, String username, String password, boolean syncingOpList) {
-		this.url = "jdbc:postgresql://" + ip + ":" + port + "/" + databaseName;
+		this(databaseName, ip, port, username, password, syncingOpList, new ConnectionPoolConfig());
+	}
+
+	public PostgreSqlService(String databaseName, String ip, int port, String username, String password, boolean syncingOpList, ConnectionPoolConfig poolConfig) {
+		this(databaseName, ip, port, username, password, syncingOpList, poolConfig, new ReplicaConfig());
+	}
+
+	public PostgreSqlService(String databaseName, String ip, int port, String username, String password, boolean syncingOpList, ConnectionPoolConfig poolConfig, ReplicaConfig replicaConfig) {
+		this.url = jdbcUrl(ip + ":" + port, databaseName);
 		this.username = username;
 		this.password = password;
 		
 		this.syncingOpList = syncingOpList;
+
+		this.pool = new ConnectionPool("postgresql", this::openConnection, poolConfig);
+		this.replicas = new ReplicaSet("postgresql", replicaConfig,
+				endpoint -> () -> openConnection(jdbcUrl(endpoint, databaseName)),
+				PostgreSqlService::replicaLagMillis);
+	}
+
+	private static String jdbcUrl(String endpoint, String databaseName) {
+		// Let the driver rewrite batched inserts into multi-row statements
+		return "jdbc:postgresql://" + endpoint + "/" + databaseName + "?reWriteBatchedInserts=true"
+				// Use a named server side statement from the first execution instead of the fifth
+				+ "&prepareThreshold=1";
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	// Number of rows sent per executeBatch call when copying local lists to the database.
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	// Number of rows fetched per round trip when reading whole tables.
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = Math.max(1, fetchSize);
+	}
+
+	@Override
+	public void setMetrics(ServiceMetrics metrics) {
+		this.metrics = metrics != null ? metrics : ServiceMetrics.NOOP;
+		pool.setMetrics(this.metrics);
+		replicas.setMetrics(this.metrics);
 	}
 
 	@Override
@@ -36,106 +138,368 @@ public class PostgreSqlService implements BaseService {
 		return true;
 	}
 
+	// Borrow a connection from the pool, closing it hands it back.
 	private Connection getConnection() throws SQLException {
+		return pool.getConnection();
+	}
+
+	// Sync and list reads go to a caught up replica when there is one, see ReplicaSet.
+	private Connection getReadConnection() throws SQLException {
+		Connection replica = replicas.getConnection();
+		return replica != null ? replica : getConnection();
+	}
+
+	// Time since the last replayed transaction, a standby that is streaming and has replayed everything it received counts as caught up.
+	// One whose WAL receiver is not streaming is cut off from the primary and its lag is unknown. The status is only
+	// visible to roles with pg_read_all_stats, without it every standby is skipped.
+	private static long replicaLagMillis(Connection connection) throws SQLException {
+		try (Statement stmt = connection.createStatement();
+		     ResultSet result = stmt.executeQuery("SELECT CASE"
+				     + " WHEN NOT pg_is_in_recovery() THEN 0"
+				     + " WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN -1"
+				     + " WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+				     + " ELSE COALESCE(EXTRACT(EPOCH FROM clock_timestamp() - pg_last_xact_replay_timestamp()) * 1000, -1)"
+				     + " END::bigint")) {
+			return result.next() ? result.getLong(1) : -1;
+		}
+	}
+
+	private Connection openConnection() throws SQLException {
+		return openConnection(this.url);
+	}
+
+	private Connection openConnection(String url) throws SQLException {
 		Connection connection = null;
 
 		try {
 			Class.forName("org.postgresql.Driver"); // This executes the static constructor of the class, which registers it to JDBC (or something)
-			connection = DriverManager.getConnection(this.url, this.username, this.password);
+			connection = DriverManager.getConnection(url, this.username, this.password);
 		} catch (Exception e) {
 			throw new SQLException("Error connecting to PostgreSQL database. See the inner exception message for more information", e);
 		}
 		return connection;
 	}
 
+	boolean isSyncingOpList() {
+		return syncingOpList;
+	}
+
+	// Opens a connection outside of the pool, LISTEN is tied to the session so the listener keeps its own.
+	Connection openListenerConnection() throws SQLException {
+		return openConnection();
+	}
+
 	@Override
 	public boolean initializeDatabase() {
+		long startTime = System.nanoTime();
 		try (Connection connection = getConnection()) {
-			try (Statement stmt = connection.createStatement();
-			     ResultSet countResult = stmt.executeQuery("SELECT COUNT(*) FROM public.whitelist LIMIT 1")) {
-				if (countResult.next() && countResult.getInt(1) > 0) {
-					WhitelistSyncLib.LOGGER.debug("The whitelist table contains " + stmt.getResultSet().getInt(1) + " items");
-				} else {
-					WhitelistSyncLib.LOGGER.info("The whitelist table is present but empty");
-				}
-
-			} catch (SQLException e) {
-				WhitelistSyncLib.LOGGER.error("Caught exception while trying to count the whitelist table", e);
-
-				if (e.getMessage().contains("relation \"whitelist\" does not exist")) {
-					WhitelistSyncLib.LOGGER.info("Error appears to be caused by a missing table; creating it", e);
-					try (Statement stmt = connection.createStatement()) { // Exception will be caught by outermost try block
-						stmt.execute("CREATE TABLE public.whitelist (\n" +
-								"    uuid uuid NOT NULL,\n" +
-								"    playername character varying NOT NULL\n" +
-								");");
-					}
+			// One query when the schema is current, see listMigrations
+			SchemaMigrator migrator = SchemaMigrator.open(connection, SCHEMA_TABLE, "INSERT INTO", "ON CONFLICT DO NOTHING", null);
+			migrator.migrate(connection, "whitelist", listMigrations("whitelist", "is_whitelisted"));
+			if (this.syncingOpList) {
+				migrator.migrate(connection, "oplist", listMigrations("oplist", "is_opped"));
+			}
 
-					WhitelistSyncLib.LOGGER.info("Whitelists table has been created");
+			// Lease and change digest shared by the servers using this database
+			migrator.migrate(connection, SyncStateTable.TABLE, Collections.singletonList(c -> {
+				try (Statement stmt = c.createStatement()) {
+					stmt.execute(SyncStateTable.createSql(STATE_TABLE));
 				}
-			}
+				SyncStateTable.createRows(c, STATE_TABLE, "INSERT INTO", "ON CONFLICT DO NOTHING");
+			}));
 
+			// Open the idle connections now instead of on the first sync
+			pool.warmUp();
+			replicas.warmUp();
+			metrics.recordLatency(Operation.INITIALIZE, System.nanoTime() - startTime);
 			return true;
 		} catch (SQLException e) {
+			metrics.recordError(Operation.INITIALIZE);
 			WhitelistSyncLib.LOGGER.error("Unexpected exception while setting up database", e);
 			return false;
 		}
 	}
 
+	// Append only, the position of a migration is its schema version.
+	private List<SchemaMigrator.Migration> listMigrations(String table, String flagColumn) {
+		return Arrays.asList(
+				connection -> {
+					try (Statement stmt = connection.createStatement()) {
+						stmt.execute("CREATE TABLE IF NOT EXISTS public." + table + " (\n" +
+								"    uuid uuid NOT NULL PRIMARY KEY,\n" +
+								"    playername character varying NOT NULL,\n" +
+								"    " + flagColumn + " boolean NOT NULL DEFAULT true,\n" +
+								"    updated_at timestamptz NOT NULL DEFAULT clock_timestamp()\n" +
+								")");
+						// Tables created by older versions only had uuid and playername
+						stmt.execute("ALTER TABLE public." + table + " ADD COLUMN IF NOT EXISTS " + flagColumn + " boolean NOT NULL DEFAULT true");
+					}
+				},
+				connection -> addUpdatedAtColumn(connection, table),
+				connection -> addPrimaryKey(connection, table),
+				connection -> createNotifyTrigger(connection, table)
+		);
+	}
+
+	// Makes uuid the primary key so writes can upsert. Older tables may hold several rows per player, only the newest one is kept,
+	// and rows without a uuid, which no version could read, are dropped.
+	private void addPrimaryKey(Connection connection, String table) throws SQLException {
+		if (hasPrimaryKey(connection, table)) {
+			return;
+		}
+
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try (Statement stmt = connection.createStatement()) {
+			// Another server may be adding the key at the same time, the lock makes it wait and the check below sees its key
+			stmt.execute("LOCK TABLE public." + table + " IN ACCESS EXCLUSIVE MODE");
+			if (hasPrimaryKey(connection, table)) {
+				connection.commit();
+				return;
+			}
+
+			int missing = stmt.executeUpdate("DELETE FROM public." + table + " WHERE uuid IS NULL");
+			if (missing > 0) {
+				WhitelistSyncLib.LOGGER.warn("Removed {} rows without a uuid from the {} table", missing, table);
+			}
+			int duplicates = stmt.executeUpdate("DELETE FROM public." + table + " a USING public." + table + " b"
+					+ " WHERE a.uuid = b.uuid AND (a.updated_at, a.ctid) < (b.updated_at, b.ctid)");
+			stmt.execute("ALTER TABLE public." + table + " ADD PRIMARY KEY (uuid)");
+			connection.commit();
+			WhitelistSyncLib.LOGGER.info("Added a primary key to the {} table, removed {} duplicate rows", table, duplicates);
+		} catch (SQLException | RuntimeException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	private boolean hasPrimaryKey(Connection connection, String table) throws SQLException {
+		try (Statement stmt = connection.createStatement();
+		     ResultSet primaryKey = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM pg_index WHERE indrelid = 'public." + table + "'::regclass AND indisprimary)")) {
+			return primaryKey.next() && primaryKey.getBoolean(1);
+		}
+	}
+
+	// Adds the updated_at column used for incremental syncs, does nothing if the table already has it.
+	private void addUpdatedAtColumn(Connection connection, String table) throws SQLException {
+		try (Statement stmt = connection.createStatement()) {
+			stmt.execute("ALTER TABLE public." + table + " ADD COLUMN IF NOT EXISTS updated_at timestamptz NOT NULL DEFAULT clock_timestamp()");
+			stmt.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_updated_at ON public." + table + " (updated_at)");
+		}
+	}
+
+	/**
+	 * Installs the trigger that NOTIFYs {@link #NOTIFY_CHANNEL} whenever a row of the table changes.
+	 * The payload is "table|is_active|uuid|name", which is everything a listener needs to apply the change.
+	 *
+	 * Runs once per table as a migration, in one transaction so the table is never without its trigger.
+	 * The advisory lock keeps two servers from replacing the shared function at the same time.
+	 */
+	private void createNotifyTrigger(Connection connection, String table) throws SQLException {
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try (Statement stmt = connection.createStatement()) {
+			stmt.execute("SELECT pg_advisory_xact_lock(hashtext('" + NOTIFY_CHANNEL + "'))");
+			stmt.execute("CREATE OR REPLACE FUNCTION public.whitelistsync_notify() RETURNS trigger AS $$\n" +
+					"DECLARE\n" +
+					"    rec record;\n" +
+					"    active boolean;\n" +
+					"BEGIN\n" +
+					"    IF TG_OP = 'DELETE' THEN\n" +
+					"        rec := OLD;\n" +
+					"        active := false;\n" +
+					"    ELSE\n" +
+					"        rec := NEW;\n" +
+					"        IF TG_TABLE_NAME = 'whitelist' THEN\n" +
+					"            active := NEW.is_whitelisted;\n" +
+					"        ELSE\n" +
+					"            active := NEW.is_opped;\n" +
+					"        END IF;\n" +
+					"    END IF;\n" +
+					"    PERFORM pg_notify('" + NOTIFY_CHANNEL + "', TG_TABLE_NAME || '|' || active::text || '|' || rec.uuid::text || '|' || COALESCE(rec.playername, ''));\n" +
+					"    RETURN NULL;\n" +
+					"END;\n" +
+					"$$ LANGUAGE plpgsql");
+			// CREATE OR REPLACE TRIGGER needs PostgreSQL 14, drop and recreate instead
+			stmt.execute("DROP TRIGGER IF EXISTS whitelistsync_notify ON public." + table);
+			stmt.execute("CREATE TRIGGER whitelistsync_notify AFTER INSERT OR UPDATE OR DELETE ON public." + table
+					+ " FOR EACH ROW EXECUTE PROCEDURE public.whitelistsync_notify()");
+			connection.commit();
+		} catch (SQLException | RuntimeException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
 	@Override
 	public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
 		ArrayList<WhitelistedPlayer> ret = new ArrayList<>();
-		try (Connection connection = getConnection();
-		     Statement statement = connection.createStatement();
-		     ResultSet result = statement.executeQuery("SELECT uuid, playername, is_whitelisted FROM public.whitelist")) {
+		streamWhitelistedPlayersFromDatabase(ret::add);
+		return ret;
+	}
+
+	@Override
+	public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+		ArrayList<OppedPlayer> ret = new ArrayList<>();
+		streamOppedPlayersFromDatabase(ret::add);
+		return ret;
+	}
+
+	@Override
+	public boolean streamWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+		return streamWhitelist(false, consumer);
+	}
+
+	@Override
+	public boolean streamOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+		return streamOps(false, consumer);
+	}
+
+	// The plain reads already return every row with its flag, removed players included.
+	// These feed a merge that writes back though, so they are never served by a lagging replica.
+	@Override
+	public boolean streamAllWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+		return streamWhitelist(true, consumer);
+	}
 
-			while (result.next()) {
-				ret.add(new WhitelistedPlayer(result.getString("uuid"), result.getString("playername"), result.getBoolean("is_whitelisted")));
+	@Override
+	public boolean streamAllOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+		return streamOps(true, consumer);
+	}
+
+	private boolean streamWhitelist(boolean fromPrimary, Consumer<WhitelistedPlayer> consumer) {
+		long startTime = System.nanoTime();
+		try (Connection connection = fromPrimary ? getConnection() : getReadConnection();
+		     PreparedStatement statement = connection.prepareStatement(SELECT_WHITELIST_SQL)) {
+			useCursor(connection, statement);
+
+			int records = 0;
+			try (ResultSet result = statement.executeQuery()) {
+				while (result.next()) {
+					consumer.accept(new WhitelistedPlayer(result.getString("uuid"), result.getString("playername"), result.getBoolean("is_whitelisted")));
+					records++;
+				}
 			}
+			metrics.recordLatency(Operation.GET_WHITELIST, System.nanoTime() - startTime);
+			metrics.recordRowsRead(Operation.GET_WHITELIST, records);
+			return true;
 		} catch (SQLException e) {
+			metrics.recordError(Operation.GET_WHITELIST);
 			WhitelistSyncLib.LOGGER.error("Unexpected exception while reading database whitelist", e);
 		}
-		return ret;
+		return false;
 	}
 
-	@Override
-	public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
-		ArrayList<OppedPlayer> ret = new ArrayList<>();
+	private boolean streamOps(boolean fromPrimary, Consumer<OppedPlayer> consumer) {
 		if (!this.syncingOpList) {
 			WhitelistSyncLib.LOGGER.error("Op list syncing is currently disabled in your config. Please enable it and restart the server to use this feature.");
-			return ret;
+			return false;
 		}
-		try (Connection connection = getConnection();
-		     Statement statement = connection.createStatement();
-		     ResultSet result = statement.executeQuery("SELECT uuid, playername, is_opped FROM public.oplist")) {
-
-			while (result.next()) {
-				ret.add(new OppedPlayer(result.getString("uuid"), result.getString("playername"), result.getBoolean("is_opped")));
+		long startTime = System.nanoTime();
+		try (Connection connection = fromPrimary ? getConnection() : getReadConnection();
+		     PreparedStatement statement = connection.prepareStatement(SELECT_OPS_SQL)) {
+			useCursor(connection, statement);
+
+			int records = 0;
+			try (ResultSet result = statement.executeQuery()) {
+				while (result.next()) {
+					consumer.accept(new OppedPlayer(result.getString("uuid"), result.getString("playername"), result.getBoolean("is_opped")));
+					records++;
+				}
 			}
+			metrics.recordLatency(Operation.GET_OPS, System.nanoTime() - startTime);
+			metrics.recordRowsRead(Operation.GET_OPS, records);
+			return true;
 		} catch (SQLException e) {
+			metrics.recordError(Operation.GET_OPS);
 			WhitelistSyncLib.LOGGER.error("Unexpected exception while reading database oplist", e);
 		}
+		return false;
+	}
 
-		return ret;
+	@Override
+	public boolean tryAcquireSyncLease(String nodeId, long leaseMillis) {
+		try (Connection connection = getConnection()) {
+			return SyncStateTable.tryAcquireLease(connection, STATE_TABLE, nodeId, leaseMillis);
+		} catch (SQLException e) {
+			WhitelistSyncLib.LOGGER.error("Unexpected exception while acquiring the sync lease", e);
+		}
+		return false;
+	}
+
+	@Override
+	public long publishChangeDigest() {
+		try (Connection connection = getConnection()) {
+			long digest = probeDigest(connection, DIGEST_WHITELIST_SQL, 0).databaseHash();
+			if (this.syncingOpList) {
+				digest = digest * 31 + probeDigest(connection, DIGEST_OPS_SQL, 0).databaseHash();
+			}
+			// 0 is reserved for unknown
+			digest = digest == 0 ? 1 : digest;
+			SyncStateTable.writeDigest(connection, STATE_TABLE, digest);
+			return digest;
+		} catch (SQLException e) {
+			WhitelistSyncLib.LOGGER.error("Unexpected exception while publishing the change digest", e);
+		}
+		return 0;
+	}
+
+	@Override
+	public long readChangeDigest() {
+		try (Connection connection = getConnection()) {
+			long digest = SyncStateTable.readDigest(connection, STATE_TABLE);
+			if (digest != lastChangeDigest) {
+				// Another server wrote, the sync that follows must see it even if the replicas don't yet
+				lastChangeDigest = digest;
+				replicas.pinToPrimary();
+			}
+			return digest;
+		} catch (SQLException e) {
+			WhitelistSyncLib.LOGGER.error("Unexpected exception while reading the change digest", e);
+		}
+		return 0;
+	}
+
+	// Row count, active rows and newest change of a table, checked before reading it in full.
+	private static SyncDigest probeDigest(Connection connection, String sql, long local) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql);
+		     ResultSet result = statement.executeQuery()) {
+			result.next();
+			Timestamp newest = result.getTimestamp(3);
+			return new SyncDigest(result.getLong(1), result.getLong(2), newest != null ? newest.getTime() : 0, local);
+		}
+	}
+
+	// pgjdbc only reads through a cursor inside a transaction, otherwise it loads the whole result at once.
+	// The read-only transaction is rolled back when the pool takes the connection back.
+	private void useCursor(Connection connection, Statement statement) throws SQLException {
+		connection.setAutoCommit(false);
+		statement.setFetchSize(fetchSize);
 	}
 
 	@Override
 	public boolean copyLocalWhitelistedPlayersToDatabase(ArrayList<WhitelistedPlayer> whitelistedPlayers) {
-		// soft to/do: run this off-thread
-		try (Connection connection = getConnection();
-			 Statement stmt = connection.createStatement()) {
-			StringBuilder sql = new StringBuilder("INSERT INTO public.whitelist(uuid, playername, is_whitelisted) VALUES ");
-			boolean isNotFirst = false;
-			for (WhitelistedPlayer wlp : whitelistedPlayers) {
-				if (isNotFirst) {
-					sql.append(", ");
+		long startTime = System.nanoTime();
+		replicas.pinToPrimary();
+		try (Connection connection = getConnection()) {
+			int records = JdbcBatch.write(connection, COPY_WHITELIST_SQL, whitelistedPlayers, batchSize, (stmt, wlp) -> {
+				if (!wlp.hasUuid() || wlp.getName() == null) {
+					return false;
 				}
-				sql.append(String.format("(%s, %s, %s)", wlp.getUuid(), wlp.getName(), wlp.isWhitelisted() ? "true" : "false"));
-				isNotFirst = true;
-			}
-			stmt.executeUpdate(sql.toString());
+				stmt.setObject(1, wlp.toUUID());
+				stmt.setString(2, wlp.getName());
+				stmt.setBoolean(3, wlp.isWhitelisted());
+				return true;
+			});
+			metrics.recordLatency(Operation.COPY_LOCAL_WHITELIST, System.nanoTime() - startTime);
+			metrics.recordRowsWritten(Operation.COPY_LOCAL_WHITELIST, records);
 			return true;
 		} catch (SQLException e) {
+			metrics.recordError(Operation.COPY_LOCAL_WHITELIST);
 			WhitelistSyncLib.LOGGER.error("Unexpected exception while copying local whitelist to database", e);
 		}
 		return false;
@@ -147,21 +511,23 @@ public class PostgreSqlService implements BaseService {
 			WhitelistSyncLib.LOGGER.error("Op list syncing is currently disabled in your config. Please enable it and restart the server to use this feature.");
 			return false;
 		}
-		try (Connection connection = getConnection();
-		     Statement stmt = connection.createStatement()) {
-			StringBuilder sql = new StringBuilder("INSERT INTO public.oplist(uuid, playername, is_opped) VALUES ");
-			boolean isNotFirst = false;
-			for (OppedPlayer wlp : oppedPlayers) {
-				if (isNotFirst) {
-					sql.append(", ");
+		long startTime = System.nanoTime();
+		replicas.pinToPrimary();
+		try (Connection connection = getConnection()) {
+			int records = JdbcBatch.write(connection, COPY_OPS_SQL, oppedPlayers, batchSize, (stmt, op) -> {
+				if (!op.hasUuid() || op.getName() == null) {
+					return false;
 				}
-				sql.append(String.format("(%s, %s, %s)", wlp.getUuid(), wlp.getName(), wlp.isOp() ? "true" : "false"));
-				isNotFirst = true;
-			}
-			stmt.executeUpdate(sql.toString());
-			stmt.close();
+				stmt.setObject(1, op.toUUID());
+				stmt.setString(2, op.getName());
+				stmt.setBoolean(3, op.isOp());
+				return true;
+			});
+			metrics.recordLatency(Operation.COPY_LOCAL_OPS, System.nanoTime() - startTime);
+			metrics.recordRowsWritten(Operation.COPY_LOCAL_OPS, records);
 			return true;
 		} catch (SQLException e) {
+			metrics.recordError(Operation.COPY_LOCAL_OPS);
 			WhitelistSyncLib.LOGGER.error("Unexpected exception while copying local oplist to database", e);
 		}
 		return false;
@@ -169,20 +535,63 @@ public class PostgreSqlService implements BaseService {
 
 	@Override
 	public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
-		try (Connection connection = getConnection();
-			 Statement statement = connection.createStatement();
-			 ResultSet result = statement.executeQuery("SELECT uuid, playername, is_whitelisted FROM public.whitelist")) {
-			while (result.next()) {
-				UUID uuid = UUID.fromString(result.getString("uuid"));
-				String name = result.getString("playername");
-
-				if (result.getBoolean("is_whitelisted") && localWhitelistedPlayers.stream().noneMatch(o -> o.getUuid().equals(uuid))) {
-					onUserAdd.call(uuid, name);
-				} else if (localWhitelistedPlayers.stream().anyMatch(o -> o.getUuid().equals(uuid))) {
-					onUserRemove.call(uuid, name);
+		return copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onUserAdd, onUserRemove, null);
+	}
+
+	@Override
+	public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
+		// Without a watermark (or on the first run) the whole table is read
+		long since = watermark != null ? watermark.whitelistQueryBound() : 0;
+		String sql = since > 0 ? SYNC_WHITELIST_SINCE_SQL : SYNC_WHITELIST_SQL;
+
+		long startTime = System.nanoTime();
+		try (Connection connection = getReadConnection();
+			 PreparedStatement statement = connection.prepareStatement(sql)) {
+			useCursor(connection, statement);
+
+			// One aggregate row tells whether anything changed since the last sync
+			SyncDigest digest = probeDigest(connection, DIGEST_WHITELIST_SQL, SyncDigest.fingerprintWhitelist(localWhitelistedPlayers));
+			// A full read the watermark asks for is never skipped, see SyncWatermark
+			if (digest.equals(whitelistDigest) && (watermark == null || since > 0)) {
+				metrics.recordSyncSkipped(Operation.SYNC_WHITELIST);
+				metrics.recordLatency(Operation.SYNC_WHITELIST, System.nanoTime() - startTime);
+				return true;
+			}
+
+			if (since > 0) {
+				statement.setTimestamp(1, new Timestamp(since));
+			}
+
+			SyncDiff diff = SyncDiff.forWhitelist(localWhitelistedPlayers);
+			int rows = 0;
+			long newest = watermark != null ? watermark.getWhitelistRevision() : 0;
+			try (ResultSet result = statement.executeQuery()) {
+				while (result.next()) {
+					rows++;
+					String rawUuid = result.getString("uuid");
+					long most = UuidCodec.parseMost(rawUuid);
+					long least = UuidCodec.parseLeast(rawUuid);
+					boolean active = result.getBoolean("is_whitelisted");
+					// Only read the name for rows that actually change something
+					if (diff.isChange(most, least, active)) {
+						diff.accept(most, least, result.getString("playername"), active);
+					}
+					newest = Math.max(newest, result.getTimestamp("updated_at").getTime());
 				}
 			}
+			diff.apply(onUserAdd, onUserRemove);
+			metrics.recordSyncDiff(Operation.SYNC_WHITELIST, diff.getAdditions().size(), diff.getRemovals().size());
+
+			if (watermark != null) {
+				watermark.setWhitelistRevision(newest);
+				watermark.save();
+			}
+			whitelistDigest = digest.afterSync(diff);
+			metrics.recordLatency(Operation.SYNC_WHITELIST, System.nanoTime() - startTime);
+			metrics.recordRowsRead(Operation.SYNC_WHITELIST, rows);
+			return true;
 		} catch (SQLException e) {
+			metrics.recordError(Operation.SYNC_WHITELIST);
 			WhitelistSyncLib.LOGGER.error("Unexpected exception while copying whitelist to local", e);
 		}
 		return false;
@@ -190,26 +599,77 @@ public class PostgreSqlService implements BaseService {
 
 	@Override
 	public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+		return copyDatabaseOppedPlayersToLocal(localOppedPlayers, onUserAdd, onUserRemove, null);
+	}
+
+	@Override
+	public boolean syncAll(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, ArrayList<OppedPlayer> localOppedPlayers,
+	                       IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove) {
+		if (!this.syncingOpList) {
+			return copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onWhitelistAdd, onWhitelistRemove);
+		}
+		// Both tables are read and diffed at the same time on separate pooled connections
+		return ParallelSync.syncAll(this, localWhitelistedPlayers, localOppedPlayers, onWhitelistAdd, onWhitelistRemove, onOpAdd, onOpRemove);
+	}
+
+	@Override
+	public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
 		if (!this.syncingOpList) {
 			return false;
 		}
-		try (Connection connection = getConnection()) {
-			 Statement statement = connection.createStatement();
-			 ResultSet result = statement.executeQuery("SELECT uuid, playername, is_opped FROM public.oplist");
-
-			int i = 0;
-			while (result.next()) {
-				i++;
-				UUID uuid = UUID.fromString(result.getString("uuid"));
-				String name = result.getString("playername");
-
-				if (result.getBoolean("is_opped") && localOppedPlayers.stream().noneMatch(op -> op.getUuid().equals(uuid))) {
-					onUserAdd.call(uuid, name);
-				} else if (localOppedPlayers.stream().anyMatch(op -> op.getUuid().equals(uuid))){
-					onUserRemove.call(uuid, name);
+
+		// Without a watermark (or on the first run) the whole table is read
+		long since = watermark != null ? watermark.opQueryBound() : 0;
+		String sql = since > 0 ? SYNC_OPS_SINCE_SQL : SYNC_OPS_SQL;
+
+		long startTime = System.nanoTime();
+		try (Connection connection = getReadConnection();
+			 PreparedStatement statement = connection.prepareStatement(sql)) {
+			useCursor(connection, statement);
+
+			// One aggregate row tells whether anything changed since the last sync
+			SyncDigest digest = probeDigest(connection, DIGEST_OPS_SQL, SyncDigest.fingerprintOps(localOppedPlayers));
+			// A full read the watermark asks for is never skipped, see SyncWatermark
+			if (digest.equals(opDigest) && (watermark == null || since > 0)) {
+				metrics.recordSyncSkipped(Operation.SYNC_OPS);
+				metrics.recordLatency(Operation.SYNC_OPS, System.nanoTime() - startTime);
+				return true;
+			}
+
+			if (since > 0) {
+				statement.setTimestamp(1, new Timestamp(since));
+			}
+
+			SyncDiff diff = SyncDiff.forOps(localOppedPlayers);
+			int rows = 0;
+			long newest = watermark != null ? watermark.getOpRevision() : 0;
+			try (ResultSet result = statement.executeQuery()) {
+				while (result.next()) {
+					rows++;
+					String rawUuid = result.getString("uuid");
+					long most = UuidCodec.parseMost(rawUuid);
+					long least = UuidCodec.parseLeast(rawUuid);
+					boolean active = result.getBoolean("is_opped");
+					// Only read the name for rows that actually change something
+					if (diff.isChange(most, least, active)) {
+						diff.accept(most, least, result.getString("playername"), active);
+					}
+					newest = Math.max(newest, result.getTimestamp("updated_at").getTime());
 				}
 			}
+			diff.apply(onUserAdd, onUserRemove);
+			metrics.recordSyncDiff(Operation.SYNC_OPS, diff.getAdditions().size(), diff.getRemovals().size());
+
+			if (watermark != null) {
+				watermark.setOpRevision(newest);
+				watermark.save();
+			}
+			opDigest = digest.afterSync(diff);
+			metrics.recordLatency(Operation.SYNC_OPS, System.nanoTime() - startTime);
+			metrics.recordRowsRead(Operation.SYNC_OPS, rows);
+			return true;
 		} catch (SQLException e) {
+			metrics.recordError(Operation.SYNC_OPS);
 			WhitelistSyncLib.LOGGER.error("Unexpected exception while copying oplist to local", e);
 		}
 		return false;
@@ -217,13 +677,19 @@ public class PostgreSqlService implements BaseService {
 
 	@Override
 	public boolean addWhitelistPlayer(UUID uuid, String name) {
+		long startTime = System.nanoTime();
+		replicas.pinToPrimary();
 		try (Connection connection = getConnection();
-		     Statement stmt = connection.createStatement()) {
-			if (stmt.executeUpdate("UPDATE public.whitelist SET is_whitelisted = true WHERE uuid = '" + uuid.toString() + "'") == 0) {
-				stmt.executeUpdate(String.format("INSERT INTO public.whitelist(uuid, playername, is_whitelisted) VALUES ('%s', '%s', true)", uuid.toString(), name));
-			}
+		     PreparedStatement upsert = connection.prepareStatement(UPSERT_WHITELIST_SQL)) {
+			upsert.setObject(1, uuid);
+			upsert.setString(2, name);
+			upsert.setBoolean(3, true);
+			upsert.executeUpdate();
+			metrics.recordLatency(Operation.ADD_WHITELIST, System.nanoTime() - startTime);
+			metrics.recordRowsWritten(Operation.ADD_WHITELIST, 1);
 			return true;
 		} catch (SQLException e) {
+			metrics.recordError(Operation.ADD_WHITELIST);
 			WhitelistSyncLib.LOGGER.error("Unexpected exception while adding player to database whitelist", e);
 			return false;
 		}
@@ -236,13 +702,19 @@ public class PostgreSqlService implements BaseService {
 			return false;
 		}
 
+		long startTime = System.nanoTime();
+		replicas.pinToPrimary();
 		try (Connection connection = getConnection();
-		     Statement stmt = connection.createStatement()) {
-			if (stmt.executeUpdate("UPDATE public.oplist SET is_opped = true WHERE uuid = '" + uuid.toString() + "'") == 0) {
-				stmt.executeUpdate(String.format("INSERT INTO public.oplist(uuid, playername, is_opped) VALUES ('%s', '%s', true)", uuid.toString(), name));
-			}
+		     PreparedStatement upsert = connection.prepareStatement(UPSERT_OPS_SQL)) {
+			upsert.setObject(1, uuid);
+			upsert.setString(2, name);
+			upsert.setBoolean(3, true);
+			upsert.executeUpdate();
+			metrics.recordLatency(Operation.ADD_OP, System.nanoTime() - startTime);
+			metrics.recordRowsWritten(Operation.ADD_OP, 1);
 			return true;
 		} catch (SQLException e) {
+			metrics.recordError(Operation.ADD_OP);
 			WhitelistSyncLib.LOGGER.error("Unexpected exception while adding player to database oplist", e);
 			return false;
 		}
@@ -250,11 +722,19 @@ public class PostgreSqlService implements BaseService {
 
 	@Override
 	public boolean removeWhitelistPlayer(UUID uuid, String name) {
+		long startTime = System.nanoTime();
+		replicas.pinToPrimary();
 		try (Connection connection = getConnection();
-		     Statement stmt = connection.createStatement()) {
-			stmt.executeUpdate("UPDATE public.whitelist SET is_whitelisted = false WHERE uuid = '" + uuid.toString() + "'");
+		     PreparedStatement upsert = connection.prepareStatement(UPSERT_WHITELIST_SQL)) {
+			upsert.setObject(1, uuid);
+			upsert.setString(2, name);
+			upsert.setBoolean(3, false);
+			upsert.executeUpdate();
+			metrics.recordLatency(Operation.REMOVE_WHITELIST, System.nanoTime() - startTime);
+			metrics.recordRowsWritten(Operation.REMOVE_WHITELIST, 1);
 			return true;
 		} catch (SQLException e) {
+			metrics.recordError(Operation.REMOVE_WHITELIST);
 			WhitelistSyncLib.LOGGER.error("Unexpected exception while removing player from database whitelist", e);
 
 			return false;
@@ -267,14 +747,81 @@ public class PostgreSqlService implements BaseService {
 			WhitelistSyncLib.LOGGER.error("Op list syncing is currently disabled in your config. Please enable it and restart the server to use this feature.");
 			return false;
 		}
+		long startTime = System.nanoTime();
+		replicas.pinToPrimary();
 		try (Connection connection = getConnection();
-		     Statement stmt = connection.createStatement()) {
-			stmt.executeUpdate("UPDATE public.oplist SET is_opped = false WHERE uuid = '" + uuid.toString() + "'");
+		     PreparedStatement upsert = connection.prepareStatement(UPSERT_OPS_SQL)) {
+			upsert.setObject(1, uuid);
+			upsert.setString(2, name);
+			upsert.setBoolean(3, false);
+			upsert.executeUpdate();
+			metrics.recordLatency(Operation.REMOVE_OP, System.nanoTime() - startTime);
+			metrics.recordRowsWritten(Operation.REMOVE_OP, 1);
 			return true;
 		} catch (SQLException e) {
+			metrics.recordError(Operation.REMOVE_OP);
 			WhitelistSyncLib.LOGGER.error("Unexpected exception while removing player from database oplist", e);
 			return false;
 		}
 	}
 
-}
\ No newline at end of file
+	@Override
+	public boolean writeWhitelistedPlayers(Collection<WhitelistedPlayer> players) {
+		long startTime = System.nanoTime();
+		replicas.pinToPrimary();
+		try (Connection connection = getConnection()) {
+			int records = JdbcBatch.write(connection, UPSERT_WHITELIST_SQL, players, batchSize, (stmt, player) -> {
+				if (!player.hasUuid() || player.getName() == null) {
+					return false;
+				}
+				stmt.setObject(1, player.toUUID());
+				stmt.setString(2, player.getName());
+				stmt.setBoolean(3, player.isWhitelisted());
+				return true;
+			});
+			metrics.recordLatency(Operation.WRITE_WHITELIST, System.nanoTime() - startTime);
+			metrics.recordRowsWritten(Operation.WRITE_WHITELIST, records);
+			return true;
+		} catch (SQLException e) {
+			metrics.recordError(Operation.WRITE_WHITELIST);
+			WhitelistSyncLib.LOGGER.error("Unexpected exception while writing whitelist changes to database", e);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean writeOppedPlayers(Collection<OppedPlayer> players) {
+		if (!this.syncingOpList) {
+			WhitelistSyncLib.LOGGER.error("Op list syncing is currently disabled in your config. Please enable it and restart the server to use this feature.");
+			return false;
+		}
+
+		long startTime = System.nanoTime();
+		replicas.pinToPrimary();
+		try (Connection connection = getConnection()) {
+			int records = JdbcBatch.write(connection, UPSERT_OPS_SQL, players, batchSize, (stmt, player) -> {
+				if (!player.hasUuid() || player.getName() == null) {
+					return false;
+				}
+				stmt.setObject(1, player.toUUID());
+				stmt.setString(2, player.getName());
+				stmt.setBoolean(3, player.isOp());
+				return true;
+			});
+			metrics.recordLatency(Operation.WRITE_OPS, System.nanoTime() - startTime);
+			metrics.recordRowsWritten(Operation.WRITE_OPS, records);
+			return true;
+		} catch (SQLException e) {
+			metrics.recordError(Operation.WRITE_OPS);
+			WhitelistSyncLib.LOGGER.error("Unexpected exception while writing oplist changes to database", e);
+			return false;
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		pool.close();
+		replicas.close();
+	}
+
+}
@@ -0,0 +1,112 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.services;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned schema migrations, so a database that is up to date costs one query at startup.
+ *
+ * The version table holds one row per component (usually a table) with the number of its migrations
+ * that already ran. A service lists the migrations of each component in order, the position of a
+ * migration is its version, so new ones are only ever appended. Databases from before this table
+ * start at version 0 and run every migration, which is why each one must be safe to run on a schema
+ * that already has its change, and on one that two servers are migrating at the same time.
+ */
+final class SchemaMigrator {
+
+    static final String TABLE = "whitelistsync_schema_version";
+
+    @FunctionalInterface
+    interface Migration {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private final String table;
+    private final String insert;
+    private final String onConflict;
+    private final Map<String, Integer> versions;
+
+    private SchemaMigrator(String table, String insert, String onConflict, Map<String, Integer> versions) {
+        this.table = table;
+        this.insert = insert;
+        this.onConflict = onConflict;
+        this.versions = versions;
+    }
+
+    /**
+     * Reads every component version, creating the version table first if it is missing.
+     *
+     * @param insert how the database starts an insert that skips existing keys, e.g. INSERT IGNORE INTO
+     * @param onConflict what it needs after the values for that, e.g. ON CONFLICT DO NOTHING
+     * @param install runs before the version table is created, e.g. to create the database, may be null
+     */
+    static SchemaMigrator open(Connection conn, String table, String insert, String onConflict, Migration install) throws SQLException {
+        Map<String, Integer> versions = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name, version FROM " + table)) {
+            while (rs.next()) {
+                versions.put(rs.getString(1), rs.getInt(2));
+            }
+        } catch (SQLException e) {
+            // A new database, or one from before versioned migrations. If the read failed for
+            // another reason creating the table fails the same way and that error is reported.
+            WhitelistSyncLib.LOGGER.info("No schema version table found, creating it.");
+            if (install != null) {
+                install.apply(conn);
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                        + "name VARCHAR(32) NOT NULL PRIMARY KEY,"
+                        + "version INTEGER NOT NULL DEFAULT 0"
+                        + ")");
+            }
+        }
+        return new SchemaMigrator(table, insert, onConflict, versions);
+    }
+
+    /**
+     * @return the recorded version of the component, 0 if it was never migrated
+     */
+    int version(String component) {
+        Integer version = versions.get(component);
+        return version != null ? version : 0;
+    }
+
+    /**
+     * Runs the migrations of the component past its recorded version, recording each one as it completes.
+     */
+    void migrate(Connection conn, String component, List<Migration> migrations) throws SQLException {
+        int current = version(component);
+        for (int i = current; i < migrations.size(); i++) {
+            migrations.get(i).apply(conn);
+            record(conn, component, i + 1);
+        }
+        if (current < migrations.size()) {
+            WhitelistSyncLib.LOGGER.info("Migrated {} from schema version {} to {}", component, current, migrations.size());
+        }
+    }
+
+    /**
+     * Stores a version for the component, also used for state that is not a migration count.
+     */
+    void record(Connection conn, String component, int version) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(insert + " " + table + " (name) VALUES (?) " + onConflict)) {
+            stmt.setString(1, component);
+            stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE " + table + " SET version = ? WHERE name = ?")) {
+            stmt.setInt(1, version);
+            stmt.setString(2, component);
+            stmt.executeUpdate();
+        }
+        versions.put(component, version);
+    }
+}
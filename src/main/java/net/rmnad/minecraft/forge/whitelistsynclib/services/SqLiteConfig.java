@@ -0,0 +1,89 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.services;
+
+/**
+ * Tuning for {@link SqLiteService}. Passing one to the service switches it to a single
+ * long-lived writer connection plus a small pool of readers, with the pragmas below
+ * applied to every connection. The defaults suit a database that only one server uses.
+ */
+public class SqLiteConfig {
+
+    // WAL lets readers run while the writer commits, instead of locking the whole file
+    private boolean walMode = true;
+    // OFF, NORMAL, FULL or EXTRA. NORMAL is safe in WAL mode and skips the fsync per commit
+    private String synchronous = "NORMAL";
+    // Bytes of the file read through mmap, 0 disables it
+    private long mmapSizeBytes = 64L * 1024 * 1024;
+    // Page cache per connection in KiB
+    private int cacheSizeKib = 8192;
+    // How long a connection waits for a lock before failing with SQLITE_BUSY
+    private int busyTimeoutMillis = 5000;
+    // Read-only connections kept next to the writer
+    private int readerConnections = 4;
+
+    public SqLiteConfig() {
+    }
+
+    public boolean isWalMode() {
+        return walMode;
+    }
+
+    public void setWalMode(boolean walMode) {
+        this.walMode = walMode;
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    public void setSynchronous(String synchronous) {
+        String value = synchronous.trim().toUpperCase();
+        if (!value.equals("OFF") && !value.equals("NORMAL") && !value.equals("FULL") && !value.equals("EXTRA")) {
+            throw new IllegalArgumentException("Unknown synchronous mode " + synchronous);
+        }
+        this.synchronous = value;
+    }
+
+    public long getMmapSizeBytes() {
+        return mmapSizeBytes;
+    }
+
+    public void setMmapSizeBytes(long mmapSizeBytes) {
+        this.mmapSizeBytes = Math.max(0, mmapSizeBytes);
+    }
+
+    public int getCacheSizeKib() {
+        return cacheSizeKib;
+    }
+
+    public void setCacheSizeKib(int cacheSizeKib) {
+        this.cacheSizeKib = Math.max(0, cacheSizeKib);
+    }
+
+    public int getBusyTimeoutMillis() {
+        return busyTimeoutMillis;
+    }
+
+    public void setBusyTimeoutMillis(int busyTimeoutMillis) {
+        this.busyTimeoutMillis = Math.max(0, busyTimeoutMillis);
+    }
+
+    public int getReaderConnections() {
+        return readerConnections;
+    }
+
+    public void setReaderConnections(int readerConnections) {
+        this.readerConnections = Math.max(1, readerConnections);
+    }
+
+    @Override
+    public String toString() {
+        return "SqLiteConfig{" +
+                "walMode=" + walMode +
+                ", synchronous='" + synchronous + '\'' +
+                ", mmapSizeBytes=" + mmapSizeBytes +
+                ", cacheSizeKib=" + cacheSizeKib +
+                ", busyTimeoutMillis=" + busyTimeoutMillis +
+                ", readerConnections=" + readerConnections +
+                '}';
+    }
+}
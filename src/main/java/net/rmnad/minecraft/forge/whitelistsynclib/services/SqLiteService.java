@@ -4,13 +4,27 @@ package net.rmnad.minecraft.forge.whitelistsynclib.services;
 import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
 import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
 import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.Operation;
+import net.rmnad.minecraft.forge.whitelistsynclib.metrics.ServiceMetrics;
 import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.UuidCodec;
 import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.pool.ConnectionPool;
+import net.rmnad.minecraft.forge.whitelistsynclib.pool.ConnectionPoolConfig;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.ParallelSync;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncDiff;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncDigest;
+import net.rmnad.minecraft.forge.whitelistsynclib.sync.SyncWatermark;
 
 import java.io.File;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Service for SQLITE Databases
@@ -19,17 +33,128 @@ import java.util.UUID;
  */
 public class SqLiteService implements BaseService {
 
+    // Current time in epoch millis, stored in updated_at on every write for incremental syncs
+    private static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+    // Rows per round trip when reading whole tables
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    // Enough for every statement the service runs
+    private static final int STATEMENT_CACHE_SIZE = 32;
+
+    private static final String SELECT_WHITELIST_SQL = "SELECT uuid, name, whitelisted FROM whitelist WHERE whitelisted = 1;";
+    private static final String SELECT_OPS_SQL = "SELECT uuid, name, isOp FROM op WHERE isOp = 1;";
+
+    // Both variants are constants so a statement cache can reuse them
+    private static final String SYNC_WHITELIST_SQL = "SELECT name, uuid, whitelisted, updated_at FROM whitelist;";
+    private static final String SYNC_WHITELIST_SINCE_SQL = "SELECT name, uuid, whitelisted, updated_at FROM whitelist WHERE updated_at >= ?;";
+    private static final String SYNC_OPS_SQL = "SELECT name, uuid, isOp, updated_at FROM op;";
+    private static final String SYNC_OPS_SINCE_SQL = "SELECT name, uuid, isOp, updated_at FROM op WHERE updated_at >= ?;";
+
     private final boolean syncingOpList;
     private final String databasePath;
+
+    private final ConnectionPool pool;
+    // Same as pool unless a SqLiteConfig was given, then a separate set of read-only connections
+    private final ConnectionPool readPool;
+
+    private int batchSize = JdbcBatch.DEFAULT_BATCH_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    // What the last successful sync of each table saw, a matching probe skips the next one
+    private volatile SyncDigest whitelistDigest;
+    private volatile SyncDigest opDigest;
+
+    private volatile ServiceMetrics metrics = ServiceMetrics.NOOP;
     
     public SqLiteService(String databasePath, boolean syncingOpList) {
+        this(databasePath, syncingOpList, new ConnectionPoolConfig());
+    }
+
+    public SqLiteService(String databasePath, boolean syncingOpList, ConnectionPoolConfig poolConfig) {
         this.databasePath = databasePath;
         this.syncingOpList = syncingOpList;
+
+        String url = "jdbc:sqlite:" + this.databasePath;
+        this.pool = new ConnectionPool("sqlite", () -> DriverManager.getConnection(url), poolConfig);
+        this.readPool = this.pool;
     }
 
-    public Connection getConnection() throws SQLException {
+    /**
+     * Tuned mode: one long-lived writer connection and {@link SqLiteConfig#getReaderConnections()} readers,
+     * all opened with the configured pragmas.
+     */
+    public SqLiteService(String databasePath, boolean syncingOpList, SqLiteConfig config) {
+        this.databasePath = databasePath;
+        this.syncingOpList = syncingOpList;
+
         String url = "jdbc:sqlite:" + this.databasePath;
-        return DriverManager.getConnection(url);
+
+        // SQLite only allows one writer at a time, so keep exactly one writer open for the whole run
+        ConnectionPoolConfig writerConfig = new ConnectionPoolConfig();
+        writerConfig.setMinIdle(1);
+        writerConfig.setMaxIdle(1);
+        writerConfig.setMaxTotal(1);
+        writerConfig.setMaxLifetimeMillis(0);
+        // The connections live for the whole run, so keep their compiled statements too
+        writerConfig.setStatementCacheSize(STATEMENT_CACHE_SIZE);
+        this.pool = new ConnectionPool("sqlite-writer", () -> openTuned(url, config, false), writerConfig);
+
+        ConnectionPoolConfig readerConfig = new ConnectionPoolConfig();
+        readerConfig.setMinIdle(1);
+        readerConfig.setMaxIdle(config.getReaderConnections());
+        readerConfig.setMaxTotal(config.getReaderConnections());
+        readerConfig.setMaxLifetimeMillis(0);
+        readerConfig.setStatementCacheSize(STATEMENT_CACHE_SIZE);
+        this.readPool = new ConnectionPool("sqlite-reader", () -> openTuned(url, config, true), readerConfig);
+    }
+
+    private static Connection openTuned(String url, SqLiteConfig config, boolean readOnly) throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + config.getBusyTimeoutMillis());
+            if (config.isWalMode()) {
+                // Stored in the file, but running it on every connection makes sure the first one sets it
+                stmt.execute("PRAGMA journal_mode = WAL");
+            }
+            stmt.execute("PRAGMA synchronous = " + config.getSynchronous());
+            stmt.execute("PRAGMA mmap_size = " + config.getMmapSizeBytes());
+            // Negative means KiB instead of pages
+            stmt.execute("PRAGMA cache_size = -" + config.getCacheSizeKib());
+            if (readOnly) {
+                stmt.execute("PRAGMA query_only = 1");
+            }
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    // Borrow a connection from the pool, closing it hands it back.
+    public Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    // Connection for queries that don't write, in tuned mode these don't wait for the writer.
+    private Connection getReadConnection() throws SQLException {
+        return readPool.getConnection();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    // Number of rows sent per executeBatch call when copying local lists to the database.
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    // Number of rows the driver buffers per step when reading whole tables.
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = Math.max(1, fetchSize);
     }
 
     public void cleanup(Statement stmt, Connection conn) {
@@ -59,6 +184,15 @@ public class SqLiteService implements BaseService {
         } catch (SQLException ignored){}
     }
 
+    @Override
+    public void setMetrics(ServiceMetrics metrics) {
+        this.metrics = metrics != null ? metrics : ServiceMetrics.NOOP;
+        pool.setMetrics(this.metrics);
+        if (readPool != pool) {
+            readPool.setMetrics(this.metrics);
+        }
+    }
+
     @Override
     public boolean requiresSyncing() {
         return false;
@@ -68,6 +202,7 @@ public class SqLiteService implements BaseService {
     @Override
     public boolean initializeDatabase() {
         WhitelistSyncLib.LOGGER.info("Setting up the SQLite service...");
+        long startTime = System.nanoTime();
         boolean success = true;
 
         // Load class?
@@ -81,49 +216,141 @@ public class SqLiteService implements BaseService {
 
         if(success) {
             Connection conn = null;
-            Statement stmt = null;
             try {
                 conn = getConnection();
 
                 // If the conn is valid, everything below this will run
                 WhitelistSyncLib.LOGGER.info("Connected to SQLite database successfully!");
 
-                // Create whitelist table if it doesn't exist.
-                // SQL statement for creating a new table
-                String sql = "CREATE TABLE IF NOT EXISTS whitelist (\n"
-                        + "	uuid text NOT NULL PRIMARY KEY,\n"
-                        + "	name text,\n"
-                        + " whitelisted integer NOT NULL);";
-                stmt = conn.createStatement();
-                stmt.executeUpdate(sql);
-
+                // One query when the schema is current, see whitelistMigrations and opMigrations
+                SchemaMigrator migrator = SchemaMigrator.open(conn, SchemaMigrator.TABLE, "INSERT OR IGNORE INTO", "", null);
+                migrator.migrate(conn, "whitelist", whitelistMigrations());
                 if (this.syncingOpList) {
-                    // SQL statement for creating a new table
-                    sql = "CREATE TABLE IF NOT EXISTS op (\n"
-                            + "	uuid text NOT NULL PRIMARY KEY,\n"
-                            + "	name text,\n"
-                            + " isOp integer NOT NULL);";
-                    stmt = conn.createStatement();
-                    stmt.executeUpdate(sql);
+                    migrator.migrate(conn, "op", opMigrations());
+                }
 
+                // Open the idle connections now instead of on the first sync
+                pool.warmUp();
+                if (readPool != pool) {
+                    readPool.warmUp();
                 }
             } catch (SQLException e) {
                 WhitelistSyncLib.LOGGER.error("Error creating whitelist or op table!");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
                 success = false;
             } finally {
-                cleanup(stmt, conn);
+                cleanup(null, conn);
             }
         }
 
+        metrics.recordLatency(Operation.INITIALIZE, System.nanoTime() - startTime);
+        if (!success) {
+            metrics.recordError(Operation.INITIALIZE);
+        }
+
         return success;
     }
 
+    // Append only, the position of a migration is its schema version.
+    private List<SchemaMigrator.Migration> whitelistMigrations() {
+        return Arrays.asList(
+                conn -> executeUpdate(conn, "CREATE TABLE IF NOT EXISTS whitelist (\n"
+                        + "	uuid text NOT NULL PRIMARY KEY,\n"
+                        + "	name text,\n"
+                        + " whitelisted integer NOT NULL,\n"
+                        + " updated_at integer NOT NULL DEFAULT 0);"),
+                // Change feed column for tables created before it existed
+                conn -> addUpdatedAtColumn(conn, "whitelist")
+        );
+    }
+
+    // Same rules as whitelistMigrations.
+    private List<SchemaMigrator.Migration> opMigrations() {
+        return Arrays.asList(
+                conn -> executeUpdate(conn, "CREATE TABLE IF NOT EXISTS op (\n"
+                        + "	uuid text NOT NULL PRIMARY KEY,\n"
+                        + "	name text,\n"
+                        + " isOp integer NOT NULL,\n"
+                        + " updated_at integer NOT NULL DEFAULT 0);"),
+                conn -> addUpdatedAtColumn(conn, "op")
+        );
+    }
+
+    private static void executeUpdate(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    // Row count, active rows and newest change of a table, checked before reading it in full.
+    private static SyncDigest probeDigest(Connection conn, String sql, long local) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            // MAX of an empty table is NULL, which getLong reads as 0
+            return new SyncDigest(rs.getLong(1), rs.getLong(2), rs.getLong(3), local);
+        }
+    }
+
+    // Adds the updated_at column and its index to a table that predates the change feed.
+    private void addUpdatedAtColumn(Connection conn, String table) throws SQLException {
+        boolean exists = false;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ");")) {
+            while (rs.next()) {
+                if ("updated_at".equalsIgnoreCase(rs.getString("name"))) {
+                    exists = true;
+                }
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            if (!exists) {
+                stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN updated_at integer NOT NULL DEFAULT 0;");
+                WhitelistSyncLib.LOGGER.info("Added \"updated_at\" column to " + table + " table.");
+            }
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_updated_at ON " + table + "(updated_at);");
+        }
+    }
+
     @Override
     public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
         // ArrayList for whitelisted players.
         ArrayList<WhitelistedPlayer> whitelistedPlayers = new ArrayList<>();
+        streamWhitelistedPlayersFromDatabase(whitelistedPlayers::add);
+        return whitelistedPlayers;
+    }
+
+    @Override
+    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+        // ArrayList for opped players.
+        ArrayList<OppedPlayer> oppedPlayers = new ArrayList<>();
+        streamOppedPlayersFromDatabase(oppedPlayers::add);
+        return oppedPlayers;
+    }
+
+    @Override
+    public boolean streamWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return streamWhitelist(SELECT_WHITELIST_SQL, false, consumer);
+    }
+
+    @Override
+    public boolean streamAllWhitelistedPlayersFromDatabase(Consumer<WhitelistedPlayer> consumer) {
+        return streamWhitelist(SYNC_WHITELIST_SQL, true, consumer);
+    }
+
+    @Override
+    public boolean streamOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return streamOps(SELECT_OPS_SQL, false, consumer);
+    }
+
+    @Override
+    public boolean streamAllOppedPlayersFromDatabase(Consumer<OppedPlayer> consumer) {
+        return streamOps(SYNC_OPS_SQL, true, consumer);
+    }
 
+    // With tombstones the query reads every row and its flag, otherwise only the active rows.
+    private boolean streamWhitelist(String sql, boolean tombstones, Consumer<WhitelistedPlayer> consumer) {
         Connection conn = null;
         PreparedStatement stmt = null;
         ResultSet rs = null;
@@ -132,38 +359,40 @@ public class SqLiteService implements BaseService {
             int records = 0;
 
             // Connect to database.
-            conn = getConnection();
-            long startTime = System.currentTimeMillis();
+            conn = getReadConnection();
+            long startTime = System.nanoTime();
 
-            String sql = "SELECT uuid, name, whitelisted FROM whitelist WHERE whitelisted = 1;";
             stmt = conn.prepareStatement(sql);
+            // The driver steps the cursor as rows are read, this only hints how many to buffer
+            stmt.setFetchSize(fetchSize);
             rs = stmt.executeQuery();
 
-            // Save queried return to names list.
+            // Hand each row over as soon as it is read.
             while (rs.next()) {
-                whitelistedPlayers.add(new WhitelistedPlayer(rs.getString("uuid"), rs.getString("name"), true));
+                boolean whitelisted = !tombstones || rs.getBoolean("whitelisted");
+                consumer.accept(new WhitelistedPlayer(rs.getString("uuid"), rs.getString("name"), whitelisted));
                 records++;
             }
 
             // Total time taken.
-            long timeTaken = System.currentTimeMillis() - startTime;
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.GET_WHITELIST, timeTaken);
+            metrics.recordRowsRead(Operation.GET_WHITELIST, records);
 
-            WhitelistSyncLib.LOGGER.debug("Database pulled whitelisted players | Took " + timeTaken + "ms | Read " + records + " records.");
+            WhitelistSyncLib.LOGGER.debug("Database pulled whitelisted players | Took {}ms | Read {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
+            return true;
         } catch (SQLException e) {
+            metrics.recordError(Operation.GET_WHITELIST);
             WhitelistSyncLib.LOGGER.error("Error querying whitelisted players from database!");
             WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
         } finally {
             cleanup(rs, stmt, conn);
         }
 
-        return whitelistedPlayers;
+        return false;
     }
 
-    @Override
-    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
-        // ArrayList for opped players.
-        ArrayList<OppedPlayer> oppedPlayers = new ArrayList<>();
-
+    private boolean streamOps(String sql, boolean tombstones, Consumer<OppedPlayer> consumer) {
         if (this.syncingOpList) {
             Connection conn = null;
             PreparedStatement stmt = null;
@@ -173,24 +402,29 @@ public class SqLiteService implements BaseService {
                 int records = 0;
 
                 // Connect to database.
-                conn = getConnection();
-                long startTime = System.currentTimeMillis();
+                conn = getReadConnection();
+                long startTime = System.nanoTime();
 
-                String sql = "SELECT uuid, name FROM op WHERE isOp = 1;";
                 stmt = conn.prepareStatement(sql);
+                stmt.setFetchSize(fetchSize);
                 rs = stmt.executeQuery();
 
-                // Save queried return to names list.
+                // Hand each row over as soon as it is read.
                 while (rs.next()) {
-                    oppedPlayers.add(new OppedPlayer(rs.getString("uuid"), rs.getString("name"), true));
+                    boolean op = !tombstones || rs.getBoolean("isOp");
+                    consumer.accept(new OppedPlayer(rs.getString("uuid"), rs.getString("name"), op));
                     records++;
                 }
 
                 // Total time taken.
-                long timeTaken = System.currentTimeMillis() - startTime;
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.GET_OPS, timeTaken);
+                metrics.recordRowsRead(Operation.GET_OPS, records);
 
-                WhitelistSyncLib.LOGGER.debug("Database pulled opped players | Took " + timeTaken + "ms | Read " + records + " records.");
+                WhitelistSyncLib.LOGGER.debug("Database pulled opped players | Took {}ms | Read {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
+                return true;
             } catch (SQLException e) {
+                metrics.recordError(Operation.GET_OPS);
                 WhitelistSyncLib.LOGGER.error("Error querying opped players from database!");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
             } finally {
@@ -202,12 +436,11 @@ public class SqLiteService implements BaseService {
                     + "Please enable it and restart the server to use this feature.");
         }
 
-        return oppedPlayers;
+        return false;
     }
 
     @Override
     public boolean copyLocalWhitelistedPlayersToDatabase(ArrayList<WhitelistedPlayer> whitelistedPlayers) {
-        // TODO: Start job on thread to avoid lag?
         // Keep track of records.
         int records = 0;
         boolean success;
@@ -217,26 +450,25 @@ public class SqLiteService implements BaseService {
         try {
             // Connect to database.
             conn = getConnection();
-            long startTime = System.currentTimeMillis();
-            // Loop through local whitelist and insert into database.
-            for (WhitelistedPlayer player : whitelistedPlayers) {
-
-                if (player.getUuid() != null && player.getName() != null) {
-                    stmt = conn.prepareStatement("INSERT OR REPLACE INTO whitelist(uuid, name, whitelisted) VALUES (?, ?, 1)");
-                    stmt.setString(1, player.getUuid());
-                    stmt.setString(2, player.getName());
-                    stmt.executeUpdate();
-                    stmt.close();
-
-                    records++;
+            long startTime = System.nanoTime();
+            // Insert the local list in batches inside one transaction.
+            records = JdbcBatch.write(conn, "INSERT OR REPLACE INTO whitelist(uuid, name, whitelisted, updated_at) VALUES (?, ?, 1, " + NOW_MILLIS + ")", whitelistedPlayers, batchSize, (batchStmt, player) -> {
+                if (!player.hasUuid() || player.getName() == null) {
+                    return false;
                 }
-            }
+                batchStmt.setString(1, UuidCodec.toString(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits()));
+                batchStmt.setString(2, player.getName());
+                return true;
+            });
             // Record time taken.
-            long timeTaken = System.currentTimeMillis() - startTime;
-            WhitelistSyncLib.LOGGER.debug("Whitelist table updated | Took " + timeTaken + "ms | Wrote " + records + " records.");
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.COPY_LOCAL_WHITELIST, timeTaken);
+            metrics.recordRowsWritten(Operation.COPY_LOCAL_WHITELIST, records);
+            WhitelistSyncLib.LOGGER.debug("Whitelist table updated | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
 
             success = true;
         } catch (SQLException e) {
+            metrics.recordError(Operation.COPY_LOCAL_WHITELIST);
             WhitelistSyncLib.LOGGER.error("Failed to update database with local records.");
             WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
             success = false;
@@ -250,7 +482,6 @@ public class SqLiteService implements BaseService {
     @Override
     public boolean copyLocalOppedPlayersToDatabase(ArrayList<OppedPlayer> oppedPlayers) {
         if (this.syncingOpList) {
-            // TODO: Start job on thread to avoid lag?
             // Keep track of records.
             int records = 0;
             boolean success;
@@ -260,26 +491,25 @@ public class SqLiteService implements BaseService {
             try {
                 // Connect to database.
                 conn = getConnection();
-                long startTime = System.currentTimeMillis();
-                // Loop through local opped players and insert into database.
-                for (OppedPlayer player : oppedPlayers) {
-
-                    if (player.getUuid() != null && player.getName() != null) {
-                        stmt = conn.prepareStatement("INSERT OR REPLACE INTO op(uuid, name, isOp) VALUES (?, ?, 1)");
-                        stmt.setString(1, player.getUuid());
-                        stmt.setString(2, player.getName());
-                        stmt.executeUpdate();
-                        stmt.close();
-
-                        records++;
+                long startTime = System.nanoTime();
+                // Insert the local list in batches inside one transaction.
+                records = JdbcBatch.write(conn, "INSERT OR REPLACE INTO op(uuid, name, isOp, updated_at) VALUES (?, ?, 1, " + NOW_MILLIS + ")", oppedPlayers, batchSize, (batchStmt, player) -> {
+                    if (!player.hasUuid() || player.getName() == null) {
+                        return false;
                     }
-                }
+                    batchStmt.setString(1, UuidCodec.toString(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits()));
+                    batchStmt.setString(2, player.getName());
+                    return true;
+                });
                 // Record time taken.
-                long timeTaken = System.currentTimeMillis() - startTime;
-                WhitelistSyncLib.LOGGER.debug("Op table updated | Took " + timeTaken + "ms | Wrote " + records + " records.");
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.COPY_LOCAL_OPS, timeTaken);
+                metrics.recordRowsWritten(Operation.COPY_LOCAL_OPS, records);
+                WhitelistSyncLib.LOGGER.debug("Op table updated | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
 
                 success = true;
             } catch (SQLException e) {
+                metrics.recordError(Operation.COPY_LOCAL_OPS);
                 WhitelistSyncLib.LOGGER.error("Failed to update database with local records.");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
                 success = false;
@@ -298,6 +528,11 @@ public class SqLiteService implements BaseService {
 
     @Override
     public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onUserAdd, onUserRemove, null);
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
         int records = 0;
         boolean success;
 
@@ -305,43 +540,64 @@ public class SqLiteService implements BaseService {
         PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            long startTime = System.currentTimeMillis();
+            conn = getReadConnection();
+            long startTime = System.nanoTime();
+
+            // Without a watermark (or on the first run) the whole table is read
+            long since = watermark != null ? watermark.whitelistQueryBound() : 0;
+
+            // One aggregate row tells whether anything changed since the last sync
+            SyncDigest digest = probeDigest(conn, "SELECT COUNT(*), COALESCE(SUM(whitelisted), 0), MAX(updated_at) FROM whitelist;", SyncDigest.fingerprintWhitelist(localWhitelistedPlayers));
+            // A full read the watermark asks for is never skipped, see SyncWatermark
+            if (digest.equals(whitelistDigest) && (watermark == null || since > 0)) {
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordSyncSkipped(Operation.SYNC_WHITELIST);
+                metrics.recordLatency(Operation.SYNC_WHITELIST, timeTaken);
+                WhitelistSyncLib.LOGGER.debug("Whitelist unchanged since last sync | Took {}ms", TimeUnit.NANOSECONDS.toMillis(timeTaken));
+                return true;
+            }
 
-            String sql = "SELECT name, uuid, whitelisted FROM whitelist;";
+            String sql = since > 0 ? SYNC_WHITELIST_SINCE_SQL : SYNC_WHITELIST_SQL;
             stmt = conn.prepareStatement(sql);
+            stmt.setFetchSize(fetchSize);
+            if (since > 0) {
+                stmt.setLong(1, since);
+            }
             rs = stmt.executeQuery();
 
+            // Index local players once, then diff every row against it.
+            SyncDiff diff = SyncDiff.forWhitelist(localWhitelistedPlayers);
+            int rows = 0;
+            long newest = watermark != null ? watermark.getWhitelistRevision() : 0;
             while (rs.next()) {
-                UUID uuid = UUID.fromString(rs.getString("uuid"));
-                String name = rs.getString("name");
-                int whitelisted = rs.getInt("whitelisted");
-
-                if (whitelisted == 1) {
-                    if (localWhitelistedPlayers.stream().noneMatch(o -> o.getUuid().equals(uuid))) {
-                        try {
-                            onUserAdd.call(uuid, name);
-                            WhitelistSyncLib.LOGGER.debug("Added " + name + " to whitelist.");
-                            records++;
-                        } catch (NullPointerException e) {
-                            WhitelistSyncLib.LOGGER.error("Player is null?");
-                            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
-                        }
-                    }
-                } else {
-                    if (localWhitelistedPlayers.stream().anyMatch(o -> o.getUuid().equals(uuid))) {
-                        onUserRemove.call(uuid, name);
-                        WhitelistSyncLib.LOGGER.debug("Removed " + name + " from whitelist.");
-                        records++;
-                    }
+                rows++;
+                String rawUuid = rs.getString("uuid");
+                long most = UuidCodec.parseMost(rawUuid);
+                long least = UuidCodec.parseLeast(rawUuid);
+                boolean active = rs.getInt("whitelisted") == 1;
+                // Only read the name for rows that actually change something
+                if (diff.isChange(most, least, active)) {
+                    diff.accept(most, least, rs.getString("name"), active);
                 }
+                newest = Math.max(newest, rs.getLong("updated_at"));
+            }
+            records = diff.apply(onUserAdd, onUserRemove);
+            metrics.recordSyncDiff(Operation.SYNC_WHITELIST, diff.getAdditions().size(), diff.getRemovals().size());
 
+            if (watermark != null) {
+                watermark.setWhitelistRevision(newest);
+                watermark.save();
             }
-            long timeTaken = System.currentTimeMillis() - startTime;
-            WhitelistSyncLib.LOGGER.debug("Copied whitelist database to local | Took " + timeTaken + "ms | Wrote " + records + " records.");
+            whitelistDigest = digest.afterSync(diff);
+
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.SYNC_WHITELIST, timeTaken);
+            metrics.recordRowsRead(Operation.SYNC_WHITELIST, rows);
+            WhitelistSyncLib.LOGGER.debug("Copied whitelist database to local | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
 
             success = true;
         } catch (SQLException e) {
+            metrics.recordError(Operation.SYNC_WHITELIST);
             WhitelistSyncLib.LOGGER.error("Error querying whitelisted players from database!");
             WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
             success = false;
@@ -354,6 +610,21 @@ public class SqLiteService implements BaseService {
 
     @Override
     public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        return copyDatabaseOppedPlayersToLocal(localOppedPlayers, onUserAdd, onUserRemove, null);
+    }
+
+    @Override
+    public boolean syncAll(ArrayList<WhitelistedPlayer> localWhitelistedPlayers, ArrayList<OppedPlayer> localOppedPlayers,
+                           IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove) {
+        if (!this.syncingOpList) {
+            return copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, onWhitelistAdd, onWhitelistRemove);
+        }
+        // Both tables are read and diffed at the same time on separate pooled connections
+        return ParallelSync.syncAll(this, localWhitelistedPlayers, localOppedPlayers, onWhitelistAdd, onWhitelistRemove, onOpAdd, onOpRemove);
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(ArrayList<OppedPlayer> localOppedPlayers, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove, SyncWatermark watermark) {
 
         if (this.syncingOpList) {
             int records = 0;
@@ -364,42 +635,64 @@ public class SqLiteService implements BaseService {
             ResultSet rs = null;
 
             try {
-                conn = getConnection();
-                long startTime = System.currentTimeMillis();
+                conn = getReadConnection();
+                long startTime = System.nanoTime();
+
+                // Without a watermark (or on the first run) the whole table is read
+                long since = watermark != null ? watermark.opQueryBound() : 0;
+
+                // One aggregate row tells whether anything changed since the last sync
+                SyncDigest digest = probeDigest(conn, "SELECT COUNT(*), COALESCE(SUM(isOp), 0), MAX(updated_at) FROM op;", SyncDigest.fingerprintOps(localOppedPlayers));
+                // A full read the watermark asks for is never skipped, see SyncWatermark
+                if (digest.equals(opDigest) && (watermark == null || since > 0)) {
+                    long timeTaken = System.nanoTime() - startTime;
+                    metrics.recordSyncSkipped(Operation.SYNC_OPS);
+                    metrics.recordLatency(Operation.SYNC_OPS, timeTaken);
+                    WhitelistSyncLib.LOGGER.debug("Op list unchanged since last sync | Took {}ms", TimeUnit.NANOSECONDS.toMillis(timeTaken));
+                    return true;
+                }
 
-                String sql = "SELECT name, uuid, isOp FROM op;";
+                String sql = since > 0 ? SYNC_OPS_SINCE_SQL : SYNC_OPS_SQL;
                 stmt = conn.prepareStatement(sql);
+                stmt.setFetchSize(fetchSize);
+                if (since > 0) {
+                    stmt.setLong(1, since);
+                }
                 rs = stmt.executeQuery();
 
+                // Index local players once, then diff every row against it.
+                SyncDiff diff = SyncDiff.forOps(localOppedPlayers);
+                int rows = 0;
+                long newest = watermark != null ? watermark.getOpRevision() : 0;
                 while (rs.next()) {
-                    UUID uuid = UUID.fromString(rs.getString("uuid"));
-                    String name = rs.getString("name");
-                    int opped = rs.getInt("isOp");
-
-                    if (opped == 1) {
-                        if (localOppedPlayers.stream().noneMatch(o -> o.getUuid().equals(uuid))) {
-                            try {
-                                onUserAdd.call(uuid, name);
-                                WhitelistSyncLib.LOGGER.debug("Opped " + name + ".");
-                                records++;
-                            } catch (NullPointerException e) {
-                                WhitelistSyncLib.LOGGER.error("Player is null?");
-                                WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
-                            }
-                        }
-                    } else {
-                        if (localOppedPlayers.stream().anyMatch(o -> o.getUuid().equals(uuid))) {
-                            onUserRemove.call(uuid, name);
-                            WhitelistSyncLib.LOGGER.debug("Deopped " + name + ".");
-                            records++;
-                        }
+                    rows++;
+                    String rawUuid = rs.getString("uuid");
+                    long most = UuidCodec.parseMost(rawUuid);
+                    long least = UuidCodec.parseLeast(rawUuid);
+                    boolean active = rs.getInt("isOp") == 1;
+                    // Only read the name for rows that actually change something
+                    if (diff.isChange(most, least, active)) {
+                        diff.accept(most, least, rs.getString("name"), active);
                     }
+                    newest = Math.max(newest, rs.getLong("updated_at"));
                 }
-                long timeTaken = System.currentTimeMillis() - startTime;
-                WhitelistSyncLib.LOGGER.debug("Copied op database to local | Took " + timeTaken + "ms | Wrote " + records + " records.");
+                records = diff.apply(onUserAdd, onUserRemove);
+                metrics.recordSyncDiff(Operation.SYNC_OPS, diff.getAdditions().size(), diff.getRemovals().size());
+
+                if (watermark != null) {
+                    watermark.setOpRevision(newest);
+                    watermark.save();
+                }
+                opDigest = digest.afterSync(diff);
+
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.SYNC_OPS, timeTaken);
+                metrics.recordRowsRead(Operation.SYNC_OPS, rows);
+                WhitelistSyncLib.LOGGER.debug("Copied op database to local | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
 
                 success = true;
             } catch (SQLException e) {
+                metrics.recordError(Operation.SYNC_OPS);
                 WhitelistSyncLib.LOGGER.error("Error querying opped players from database!");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
                 success = false;
@@ -426,20 +719,23 @@ public class SqLiteService implements BaseService {
             conn = getConnection();
 
             // Start time.
-            long startTime = System.currentTimeMillis();
+            long startTime = System.nanoTime();
 
-            String sql = "INSERT OR REPLACE INTO whitelist(uuid, name, whitelisted) VALUES (?, ?, 1)";
+            String sql = "INSERT OR REPLACE INTO whitelist(uuid, name, whitelisted, updated_at) VALUES (?, ?, 1, " + NOW_MILLIS + ")";
             stmt = conn.prepareStatement(sql);
             stmt.setString(1, uuid.toString());
             stmt.setString(2, name);
             stmt.executeUpdate();
 
             // Time taken.
-            long timeTaken = System.currentTimeMillis() - startTime;
-            WhitelistSyncLib.LOGGER.debug("Added " + name + " to whitelist | Took " + timeTaken + "ms");
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.ADD_WHITELIST, timeTaken);
+            metrics.recordRowsWritten(Operation.ADD_WHITELIST, 1);
+            WhitelistSyncLib.LOGGER.debug("Added {} to whitelist | Took {}ms", name, TimeUnit.NANOSECONDS.toMillis(timeTaken));
 
             success = true;
         } catch (SQLException e) {
+            metrics.recordError(Operation.ADD_WHITELIST);
             WhitelistSyncLib.LOGGER.error("Error adding " + name + " to whitelist database!");
             WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
             success = false;
@@ -461,19 +757,22 @@ public class SqLiteService implements BaseService {
                 conn = getConnection();
 
                 // Start time.
-                long startTime = System.currentTimeMillis();
+                long startTime = System.nanoTime();
 
-                stmt = conn.prepareStatement("INSERT OR REPLACE INTO op(uuid, name, isOp) VALUES (?, ?, 1)");
+                stmt = conn.prepareStatement("INSERT OR REPLACE INTO op(uuid, name, isOp, updated_at) VALUES (?, ?, 1, " + NOW_MILLIS + ")");
                 stmt.setString(1, uuid.toString());
                 stmt.setString(2, name);
                 stmt.executeUpdate();
 
                 // Time taken.
-                long timeTaken = System.currentTimeMillis() - startTime;
-                WhitelistSyncLib.LOGGER.debug("Database opped " + name + " | Took " + timeTaken + "ms");
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.ADD_OP, timeTaken);
+                metrics.recordRowsWritten(Operation.ADD_OP, 1);
+                WhitelistSyncLib.LOGGER.debug("Database opped {} | Took {}ms", name, TimeUnit.NANOSECONDS.toMillis(timeTaken));
 
                 success = true;
             } catch (SQLException e) {
+                metrics.recordError(Operation.ADD_OP);
                 WhitelistSyncLib.LOGGER.error("Error opping " + name + " !");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
                 success = false;
@@ -500,19 +799,22 @@ public class SqLiteService implements BaseService {
             conn = getConnection();
 
             // Start time.
-            long startTime = System.currentTimeMillis();
+            long startTime = System.nanoTime();
 
-            stmt = conn.prepareStatement("INSERT OR REPLACE INTO whitelist(uuid, name, whitelisted) VALUES (?, ?, 0)");
+            stmt = conn.prepareStatement("INSERT OR REPLACE INTO whitelist(uuid, name, whitelisted, updated_at) VALUES (?, ?, 0, " + NOW_MILLIS + ")");
             stmt.setString(1, uuid.toString());
             stmt.setString(2, name);
             stmt.executeUpdate();
 
             // Time taken.
-            long timeTaken = System.currentTimeMillis() - startTime;
-            WhitelistSyncLib.LOGGER.debug("Removed " + name + " from whitelist | Took " + timeTaken + "ms");
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.REMOVE_WHITELIST, timeTaken);
+            metrics.recordRowsWritten(Operation.REMOVE_WHITELIST, 1);
+            WhitelistSyncLib.LOGGER.debug("Removed {} from whitelist | Took {}ms", name, TimeUnit.NANOSECONDS.toMillis(timeTaken));
 
             success = true;
         } catch (SQLException e) {
+            metrics.recordError(Operation.REMOVE_WHITELIST);
             WhitelistSyncLib.LOGGER.error("Error removing " + name + " to whitelist database!");
             WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
             success = false;
@@ -534,19 +836,22 @@ public class SqLiteService implements BaseService {
                 conn = getConnection();
 
                 // Start time.
-                long startTime = System.currentTimeMillis();
+                long startTime = System.nanoTime();
 
-                stmt = conn.prepareStatement("INSERT OR REPLACE INTO op(uuid, name, isOp) VALUES (?, ?, 0)");
+                stmt = conn.prepareStatement("INSERT OR REPLACE INTO op(uuid, name, isOp, updated_at) VALUES (?, ?, 0, " + NOW_MILLIS + ")");
                 stmt.setString(1, uuid.toString());
                 stmt.setString(2, name);
                 stmt.executeUpdate();
 
                 // Time taken
-                long timeTaken = System.currentTimeMillis() - startTime;
-                WhitelistSyncLib.LOGGER.debug("Deopped " + name + " | Took " + timeTaken + "ms");
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.REMOVE_OP, timeTaken);
+                metrics.recordRowsWritten(Operation.REMOVE_OP, 1);
+                WhitelistSyncLib.LOGGER.debug("Deopped {} | Took {}ms", name, TimeUnit.NANOSECONDS.toMillis(timeTaken));
 
                 success = true;
             } catch (SQLException e) {
+                metrics.recordError(Operation.REMOVE_OP);
                 WhitelistSyncLib.LOGGER.error("Error deopping " + name + ".");
                 WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
                 success = false;
@@ -562,4 +867,89 @@ public class SqLiteService implements BaseService {
 
         return false;
     }
+
+    @Override
+    public boolean writeWhitelistedPlayers(Collection<WhitelistedPlayer> players) {
+        boolean success;
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            long startTime = System.nanoTime();
+            int records = JdbcBatch.write(conn, "INSERT OR REPLACE INTO whitelist(uuid, name, whitelisted, updated_at) VALUES (?, ?, ?, " + NOW_MILLIS + ")", players, batchSize, (batchStmt, player) -> {
+                if (!player.hasUuid() || player.getName() == null) {
+                    return false;
+                }
+                batchStmt.setString(1, UuidCodec.toString(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits()));
+                batchStmt.setString(2, player.getName());
+                batchStmt.setInt(3, player.isWhitelisted() ? 1 : 0);
+                return true;
+            });
+
+            long timeTaken = System.nanoTime() - startTime;
+            metrics.recordLatency(Operation.WRITE_WHITELIST, timeTaken);
+            metrics.recordRowsWritten(Operation.WRITE_WHITELIST, records);
+            WhitelistSyncLib.LOGGER.debug("Wrote whitelist changes | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
+
+            success = true;
+        } catch (SQLException e) {
+            metrics.recordError(Operation.WRITE_WHITELIST);
+            WhitelistSyncLib.LOGGER.error("Error writing whitelist changes to database!");
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+            success = false;
+        } finally {
+            cleanup(null, conn);
+        }
+
+        return success;
+    }
+
+    @Override
+    public boolean writeOppedPlayers(Collection<OppedPlayer> players) {
+        if (this.syncingOpList) {
+            boolean success;
+            Connection conn = null;
+            try {
+                conn = getConnection();
+                long startTime = System.nanoTime();
+                int records = JdbcBatch.write(conn, "INSERT OR REPLACE INTO op(uuid, name, isOp, updated_at) VALUES (?, ?, ?, " + NOW_MILLIS + ")", players, batchSize, (batchStmt, player) -> {
+                    if (!player.hasUuid() || player.getName() == null) {
+                        return false;
+                    }
+                    batchStmt.setString(1, UuidCodec.toString(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits()));
+                    batchStmt.setString(2, player.getName());
+                    batchStmt.setInt(3, player.isOp() ? 1 : 0);
+                    return true;
+                });
+
+                long timeTaken = System.nanoTime() - startTime;
+                metrics.recordLatency(Operation.WRITE_OPS, timeTaken);
+                metrics.recordRowsWritten(Operation.WRITE_OPS, records);
+                WhitelistSyncLib.LOGGER.debug("Wrote op changes | Took {}ms | Wrote {} records.", TimeUnit.NANOSECONDS.toMillis(timeTaken), records);
+
+                success = true;
+            } catch (SQLException e) {
+                metrics.recordError(Operation.WRITE_OPS);
+                WhitelistSyncLib.LOGGER.error("Error writing op changes to database!");
+                WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+                success = false;
+            } finally {
+                cleanup(null, conn);
+            }
+
+            return success;
+        } else {
+            WhitelistSyncLib.LOGGER.error("Op list syncing is currently disabled in your config. "
+                    + "Please enable it and restart the server to use this feature.");
+        }
+
+        return false;
+    }
+
+    @Override
+    public void shutdown() {
+        if (readPool != pool) {
+            readPool.close();
+        }
+        pool.close();
+    }
 }
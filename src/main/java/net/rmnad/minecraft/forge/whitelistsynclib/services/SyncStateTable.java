@@ -0,0 +1,86 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Shared coordination table for servers syncing against the same database, see SyncScheduler.
+ *
+ * It holds two rows: the sync lease (which node polls the tables and until when) and the change
+ * digest that node publishes. Both rows are created up front, so taking the lease and publishing
+ * the digest are single conditional UPDATEs that work the same on every database.
+ * Lease times come from the servers' clocks, which only need to agree to well within the lease.
+ */
+final class SyncStateTable {
+
+    static final String TABLE = "whitelistsync_state";
+
+    private static final String LEASE_ROW = "lease";
+    private static final String DIGEST_ROW = "digest";
+
+    private SyncStateTable() {
+    }
+
+    static String createSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "name VARCHAR(16) NOT NULL PRIMARY KEY,"
+                + "holder VARCHAR(64),"
+                + "expires_at BIGINT NOT NULL DEFAULT 0,"
+                + "digest BIGINT NOT NULL DEFAULT 0"
+                + ")";
+    }
+
+    /**
+     * @param insert how the database starts an insert that skips existing keys, e.g. INSERT IGNORE INTO
+     * @param onConflict what it needs after the values for that, e.g. ON CONFLICT DO NOTHING
+     */
+    static void createRows(Connection conn, String table, String insert, String onConflict) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(insert + " " + table + " (name) VALUES (?) " + onConflict)) {
+            stmt.setString(1, LEASE_ROW);
+            stmt.executeUpdate();
+            stmt.setString(1, DIGEST_ROW);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Takes the lease if it is free or expired, or renews it if the node already holds it.
+     * @return whether the node holds the lease for the next leaseMillis
+     */
+    static boolean tryAcquireLease(Connection conn, String table, String nodeId, long leaseMillis) throws SQLException {
+        long now = System.currentTimeMillis();
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE " + table
+                + " SET holder = ?, expires_at = ? WHERE name = ? AND (holder = ? OR holder IS NULL OR expires_at < ?)")) {
+            stmt.setString(1, nodeId);
+            stmt.setLong(2, now + leaseMillis);
+            stmt.setString(3, LEASE_ROW);
+            stmt.setString(4, nodeId);
+            stmt.setLong(5, now);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    static void writeDigest(Connection conn, String table, long digest) throws SQLException {
+        // Skipped when unchanged so followers polling the row don't contend with a write every tick
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE " + table + " SET digest = ? WHERE name = ? AND digest <> ?")) {
+            stmt.setLong(1, digest);
+            stmt.setString(2, DIGEST_ROW);
+            stmt.setLong(3, digest);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * @return the published digest, 0 if none was published yet
+     */
+    static long readDigest(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT digest FROM " + table + " WHERE name = ?")) {
+            stmt.setString(1, DIGEST_ROW);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+}
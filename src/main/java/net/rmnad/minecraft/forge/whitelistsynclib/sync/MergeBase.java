@@ -0,0 +1,145 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.sync;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.cache.UuidSet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * The whitelist and op list as they were after the last successful {@link ThreeWayMerge}.
+ *
+ * Comparing both sides against this snapshot tells which side changed a player since then.
+ * It is kept in a small text file next to the server so it survives restarts; a list without
+ * a snapshot (first merge, or after {@link #reset()}) is merged with the database winning.
+ */
+public class MergeBase {
+
+    private static final String WHITELIST_SECTION = "[whitelist]";
+    private static final String OP_SECTION = "[op]";
+
+    private final Path file;
+
+    // Null until the list has been merged once
+    private volatile UuidSet whitelist;
+    private volatile UuidSet ops;
+
+    /**
+     * @param file where the snapshot is persisted, null keeps it in memory only
+     */
+    public MergeBase(Path file) {
+        this.file = file;
+        load();
+    }
+
+    public boolean hasWhitelist() {
+        return whitelist != null;
+    }
+
+    public boolean hasOps() {
+        return ops != null;
+    }
+
+    UuidSet getWhitelist() {
+        return whitelist;
+    }
+
+    UuidSet getOps() {
+        return ops;
+    }
+
+    void setWhitelist(Collection<UUID> uuids) {
+        whitelist = toSet(uuids);
+    }
+
+    void setOps(Collection<UUID> uuids) {
+        ops = toSet(uuids);
+    }
+
+    // Forget both snapshots so the next merge lets the database win every difference.
+    public void reset() {
+        whitelist = null;
+        ops = null;
+        save();
+    }
+
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+
+            // Write to a temp file first so a crash never leaves a half written snapshot
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writeSection(writer, WHITELIST_SECTION, whitelist);
+                writeSection(writer, OP_SECTION, ops);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            WhitelistSyncLib.LOGGER.error("Failed to save merge base to " + file);
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    private void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+
+        UuidSet loadedWhitelist = null;
+        UuidSet loadedOps = null;
+        UuidSet section = null;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.equals(WHITELIST_SECTION)) {
+                    section = loadedWhitelist = new UuidSet();
+                } else if (line.equals(OP_SECTION)) {
+                    section = loadedOps = new UuidSet();
+                } else if (section != null) {
+                    section.add(UUID.fromString(line));
+                }
+            }
+            whitelist = loadedWhitelist;
+            ops = loadedOps;
+        } catch (IOException | IllegalArgumentException e) {
+            WhitelistSyncLib.LOGGER.warn("Could not read merge base from " + file + ", the database wins the next merge.");
+            whitelist = null;
+            ops = null;
+        }
+    }
+
+    private static void writeSection(BufferedWriter writer, String header, UuidSet uuids) throws IOException {
+        if (uuids == null) {
+            return;
+        }
+        writer.write(header);
+        writer.newLine();
+        for (UUID uuid : uuids.toList()) {
+            writer.write(uuid.toString());
+            writer.newLine();
+        }
+    }
+
+    private static UuidSet toSet(Collection<UUID> uuids) {
+        UuidSet set = new UuidSet();
+        set.replaceWith(uuids, uuids.size());
+        return set;
+    }
+}
@@ -0,0 +1,119 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.sync;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.async.NamedThreadFactory;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.services.BaseService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Syncs the whitelist and the op list at the same time instead of one after the other.
+ *
+ * The op list is read and diffed on a worker thread while the calling thread does the whitelist,
+ * each on its own pooled connection. The callbacks are held back until both are done and then run
+ * on the calling thread, whitelist first, in the same order two sequential syncs would have used.
+ */
+public final class ParallelSync {
+
+    // Idle threads die off after a minute, a server only needs one while a sync runs
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new NamedThreadFactory("WhitelistSync-Sync"));
+
+    private ParallelSync() {
+    }
+
+    public static boolean syncAll(BaseService service, ArrayList<WhitelistedPlayer> localWhitelistedPlayers, ArrayList<OppedPlayer> localOppedPlayers,
+                                  IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove) {
+        long startTime = System.nanoTime();
+
+        Recorder whitelistChanges = new Recorder();
+        Recorder opChanges = new Recorder();
+
+        CompletableFuture<Boolean> opSync;
+        try {
+            opSync = CompletableFuture.supplyAsync(
+                    () -> service.copyDatabaseOppedPlayersToLocal(localOppedPlayers, opChanges::add, opChanges::remove), EXECUTOR);
+        } catch (RejectedExecutionException e) {
+            // Only happens while the JVM shuts down, fall back to the calling thread
+            opSync = CompletableFuture.completedFuture(
+                    service.copyDatabaseOppedPlayersToLocal(localOppedPlayers, opChanges::add, opChanges::remove));
+        }
+
+        boolean whitelistSuccess = service.copyDatabaseWhitelistedPlayersToLocal(localWhitelistedPlayers, whitelistChanges::add, whitelistChanges::remove);
+
+        boolean opSuccess;
+        try {
+            opSuccess = opSync.join();
+        } catch (CompletionException e) {
+            WhitelistSyncLib.LOGGER.error("Op list sync failed.");
+            WhitelistSyncLib.LOGGER.error(e.getCause().getMessage(), e.getCause());
+            opSuccess = false;
+        }
+
+        // Whatever a sync recorded it already counts as applied, so replay it even if the other one failed
+        whitelistChanges.replay("whitelist", onWhitelistAdd, onWhitelistRemove);
+        opChanges.replay("op list", onOpAdd, onOpRemove);
+
+        WhitelistSyncLib.LOGGER.debug("Synced whitelist and op list | Took {}ms | Applied {} whitelist and {} op changes.",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), whitelistChanges.size(), opChanges.size());
+        return whitelistSuccess && opSuccess;
+    }
+
+    /**
+     * Callback calls made by one sync, kept in call order.
+     */
+    private static final class Recorder {
+        private final List<Call> calls = new ArrayList<>();
+
+        // Called on the thread running the sync
+        private synchronized void add(UUID uuid, String name) {
+            calls.add(new Call(uuid, name, true));
+        }
+
+        private synchronized void remove(UUID uuid, String name) {
+            calls.add(new Call(uuid, name, false));
+        }
+
+        private synchronized int size() {
+            return calls.size();
+        }
+
+        private synchronized void replay(String listName, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+            for (Call call : calls) {
+                try {
+                    if (call.added) {
+                        onUserAdd.call(call.uuid, call.name);
+                    } else {
+                        onUserRemove.call(call.uuid, call.name);
+                    }
+                } catch (RuntimeException e) {
+                    WhitelistSyncLib.LOGGER.error("Failed to apply change for " + call.name + " to local " + listName + ".");
+                    WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private static final class Call {
+        private final UUID uuid;
+        private final String name;
+        private final boolean added;
+
+        private Call(UUID uuid, String name, boolean added) {
+            this.uuid = uuid;
+            this.name = name;
+            this.added = added;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.sync;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Binary copy of the synced whitelist and op list, so a server can start from it without the database.
+ *
+ * Layout, big endian: a header with magic, format version, revision (one higher on every save),
+ * save time in epoch millis, CRC32 of the body and the number of players in each list; then the
+ * body with one record per player: uuid as two longs, name length and UTF-8 name (-1 for no name),
+ * whitelist first. A file with a bad magic, version or checksum is ignored.
+ *
+ * Saves go to a temp file that is synced to disk and then moved over the old one, so a crash leaves
+ * either snapshot but never half of one. Loads read the whole file into one buffer instead of going
+ * through a stream. The file is not mapped, a live mapping would keep the next save from replacing it
+ * on Windows until the mapping is garbage collected.
+ */
+public class SnapshotFile {
+
+    // "WLSS"
+    private static final int MAGIC = 0x574C5353;
+    private static final int VERSION = 1;
+    // magic, version, revision, saved at, crc, whitelist count, op count
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+    private static final int CRC_OFFSET = 4 + 4 + 8 + 8;
+
+    private final Path file;
+
+    // Revision of the file on disk, 0 before the first save
+    private long revision = 0;
+
+    public SnapshotFile(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public synchronized long getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return the snapshot on disk, null if there is none or it can't be used
+     */
+    public synchronized Snapshot load() {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                WhitelistSyncLib.LOGGER.warn("Ignoring snapshot " + file + " with unexpected size " + size + ".");
+                return null;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("file shrank while reading");
+                }
+            }
+            ((Buffer) buffer).flip();
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                WhitelistSyncLib.LOGGER.warn("Ignoring snapshot " + file + ", it is not a snapshot or from another version.");
+                return null;
+            }
+            long fileRevision = buffer.getLong();
+            long savedAt = buffer.getLong();
+            int crc = buffer.getInt();
+            int whitelistCount = buffer.getInt();
+            int opCount = buffer.getInt();
+
+            CRC32 checksum = new CRC32();
+            checksum.update(buffer.duplicate());
+            if ((int) checksum.getValue() != crc) {
+                WhitelistSyncLib.LOGGER.warn("Ignoring snapshot " + file + ", checksum mismatch.");
+                return null;
+            }
+
+            ArrayList<WhitelistedPlayer> whitelist = new ArrayList<>(whitelistCount);
+            for (int i = 0; i < whitelistCount; i++) {
+                whitelist.add(new WhitelistedPlayer(buffer.getLong(), buffer.getLong(), readName(buffer), true));
+            }
+            ArrayList<OppedPlayer> ops = new ArrayList<>(opCount);
+            for (int i = 0; i < opCount; i++) {
+                ops.add(new OppedPlayer(buffer.getLong(), buffer.getLong(), readName(buffer), true));
+            }
+
+            revision = fileRevision;
+            return new Snapshot(fileRevision, savedAt, whitelist, ops);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            WhitelistSyncLib.LOGGER.warn("Could not read snapshot " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot on disk.
+     * @param whitelist uuid and name of every whitelisted player
+     * @param ops uuid and name of every opped player
+     */
+    public synchronized boolean save(Map<UUID, String> whitelist, Map<UUID, String> ops) {
+        long nextRevision = revision + 1;
+
+        byte[][] whitelistNames = encodeNames(whitelist);
+        byte[][] opNames = encodeNames(ops);
+        int size = HEADER_BYTES + bodyBytes(whitelistNames) + bodyBytes(opNames);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(nextRevision);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.putInt(0); // crc, filled in below
+        buffer.putInt(whitelist.size());
+        buffer.putInt(ops.size());
+        putRecords(buffer, whitelist, whitelistNames);
+        putRecords(buffer, ops, opNames);
+
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), HEADER_BYTES, size - HEADER_BYTES);
+        buffer.putInt(CRC_OFFSET, (int) checksum.getValue());
+        // Through Buffer, ByteBuffer.flip() only exists from Java 9 and fails on Java 8
+        ((Buffer) buffer).flip();
+
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                // On disk before the move, otherwise a crash could leave an empty file under the real name
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            revision = nextRevision;
+            WhitelistSyncLib.LOGGER.debug("Saved snapshot revision {} with {} whitelisted and {} opped players.", nextRevision, whitelist.size(), ops.size());
+            return true;
+        } catch (IOException e) {
+            WhitelistSyncLib.LOGGER.error("Failed to save snapshot to " + file);
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private static byte[][] encodeNames(Map<UUID, String> players) {
+        byte[][] names = new byte[players.size()][];
+        int i = 0;
+        for (String name : players.values()) {
+            names[i++] = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    private static int bodyBytes(byte[][] names) {
+        int bytes = 0;
+        for (byte[] name : names) {
+            bytes += 8 + 8 + 2 + (name == null ? 0 : name.length);
+        }
+        return bytes;
+    }
+
+    private static void putRecords(ByteBuffer buffer, Map<UUID, String> players, byte[][] names) {
+        int i = 0;
+        for (UUID uuid : players.keySet()) {
+            byte[] name = names[i++];
+            buffer.putLong(uuid.getMostSignificantBits());
+            buffer.putLong(uuid.getLeastSignificantBits());
+            if (name == null) {
+                buffer.putShort((short) -1);
+            } else {
+                buffer.putShort((short) name.length);
+                buffer.put(name);
+            }
+        }
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] name = new byte[length];
+        buffer.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Content of a loaded snapshot file.
+     */
+    public static final class Snapshot {
+        private final long revision;
+        private final long savedAt;
+        private final ArrayList<WhitelistedPlayer> whitelist;
+        private final ArrayList<OppedPlayer> ops;
+
+        private Snapshot(long revision, long savedAt, ArrayList<WhitelistedPlayer> whitelist, ArrayList<OppedPlayer> ops) {
+            this.revision = revision;
+            this.savedAt = savedAt;
+            this.whitelist = whitelist;
+            this.ops = ops;
+        }
+
+        public long getRevision() {
+            return revision;
+        }
+
+        // Epoch millis
+        public long getSavedAt() {
+            return savedAt;
+        }
+
+        public ArrayList<WhitelistedPlayer> getWhitelist() {
+            return whitelist;
+        }
+
+        public ArrayList<OppedPlayer> getOps() {
+            return ops;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.sync;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.cache.UuidSet;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Computes what has to change locally to match the database.
+ *
+ * The local list is indexed by UUID once, then every database row is checked against
+ * that index while the result set is being read, so a sync is linear in rows + local players.
+ * UUIDs are handled as pairs of longs; objects are only created for rows that are a change,
+ * so callers can use {@link #isChange} to skip reading the name of unchanged rows.
+ */
+public class SyncDiff {
+
+    private final String listName;
+    private final UuidSet local;
+
+    private final List<Change> additions = new ArrayList<>();
+    private final List<Change> removals = new ArrayList<>();
+
+    private SyncDiff(String listName, UuidSet local) {
+        this.listName = listName;
+        this.local = local;
+    }
+
+    public static SyncDiff forWhitelist(Collection<WhitelistedPlayer> localWhitelistedPlayers) {
+        UuidSet index = new UuidSet();
+        for (WhitelistedPlayer player : localWhitelistedPlayers) {
+            if (player.hasUuid()) {
+                index.add(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+            } else {
+                warnInvalid(player.getUuid());
+            }
+        }
+        return new SyncDiff("whitelist", index);
+    }
+
+    public static SyncDiff forOps(Collection<OppedPlayer> localOppedPlayers) {
+        UuidSet index = new UuidSet();
+        for (OppedPlayer player : localOppedPlayers) {
+            if (player.hasUuid()) {
+                index.add(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+            } else {
+                warnInvalid(player.getUuid());
+            }
+        }
+        return new SyncDiff("op list", index);
+    }
+
+    /**
+     * Whether the player is in the local list, including changes accepted so far.
+     */
+    public boolean isLocal(long most, long least) {
+        return local.contains(most, least);
+    }
+
+    /**
+     * Whether a database row would change the local list, without recording anything.
+     */
+    public boolean isChange(long most, long least, boolean active) {
+        return active != local.contains(most, least);
+    }
+
+    /**
+     * Feed one database row into the diff.
+     * @param active whether the row is whitelisted/opped, false for removed players
+     */
+    public void accept(long most, long least, String name, boolean active) {
+        if (active) {
+            // add() returns false when the player is already local (or was added by an earlier row)
+            if (local.add(most, least)) {
+                additions.add(new Change(new UUID(most, least), name));
+            }
+        } else if (local.remove(most, least)) {
+            removals.add(new Change(new UUID(most, least), name));
+        }
+    }
+
+    public void accept(UUID uuid, String name, boolean active) {
+        accept(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), name, active);
+    }
+
+    public List<Change> getAdditions() {
+        return additions;
+    }
+
+    public List<Change> getRemovals() {
+        return removals;
+    }
+
+    public int size() {
+        return additions.size() + removals.size();
+    }
+
+    public boolean isEmpty() {
+        return additions.isEmpty() && removals.isEmpty();
+    }
+
+    /**
+     * Run the callbacks for every change, returns the number of changes applied.
+     */
+    public int apply(IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        int records = 0;
+
+        for (Change change : additions) {
+            try {
+                onUserAdd.call(change.getUuid(), change.getName());
+                WhitelistSyncLib.LOGGER.debug("Added {} to local {}.", change.getName(), listName);
+                records++;
+            } catch (RuntimeException e) {
+                WhitelistSyncLib.LOGGER.error("Failed to add " + change.getName() + " to local " + listName + ".");
+                WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+            }
+        }
+
+        for (Change change : removals) {
+            try {
+                onUserRemove.call(change.getUuid(), change.getName());
+                WhitelistSyncLib.LOGGER.debug("Removed {} from local {}.", change.getName(), listName);
+                records++;
+            } catch (RuntimeException e) {
+                WhitelistSyncLib.LOGGER.error("Failed to remove " + change.getName() + " from local " + listName + ".");
+                WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+            }
+        }
+
+        return records;
+    }
+
+    private static void warnInvalid(String uuid) {
+        if (uuid != null) {
+            WhitelistSyncLib.LOGGER.warn("Ignoring local player with invalid uuid " + uuid);
+        }
+    }
+
+    /**
+     * A single player that has to be added or removed locally.
+     */
+    public static class Change {
+        private final UUID uuid;
+        private final String name;
+
+        public Change(UUID uuid, String name) {
+            this.uuid = uuid;
+            this.name = name;
+        }
+
+        public UUID getUuid() {
+            return uuid;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return "Change{" +
+                    "uuid=" + uuid +
+                    ", name='" + name + '\'' +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.sync;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Cheap fingerprint of one synced list, used to skip a database to local sync when nothing changed.
+ *
+ * The database half comes from a single aggregate query (row count, active rows, newest updated_at),
+ * the local half is an order independent hash of the local list. A sync is only skipped when both
+ * halves match what was left behind by the last successful sync, so a local list edited outside the
+ * sync is still corrected on the next poll.
+ */
+public final class SyncDigest {
+
+    private final long rows;
+    private final long activeRows;
+    private final long newest;
+    private final long local;
+
+    public SyncDigest(long rows, long activeRows, long newest, long local) {
+        this.rows = rows;
+        this.activeRows = activeRows;
+        this.newest = newest;
+        this.local = local;
+    }
+
+    public static long fingerprintWhitelist(Collection<WhitelistedPlayer> players) {
+        long fingerprint = 0;
+        for (WhitelistedPlayer player : players) {
+            if (player.hasUuid()) {
+                fingerprint += mix(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+            }
+        }
+        return fingerprint;
+    }
+
+    public static long fingerprintOps(Collection<OppedPlayer> players) {
+        long fingerprint = 0;
+        for (OppedPlayer player : players) {
+            if (player.hasUuid()) {
+                fingerprint += mix(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits());
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * The digest to remember after applying a sync: same database half, local half moved by the
+     * changes the sync made. If a callback failed the real local list won't match, which only
+     * costs a full read on the next poll.
+     */
+    public SyncDigest afterSync(SyncDiff diff) {
+        long fingerprint = local;
+        for (SyncDiff.Change change : diff.getAdditions()) {
+            fingerprint += mix(change.getUuid());
+        }
+        for (SyncDiff.Change change : diff.getRemovals()) {
+            fingerprint -= mix(change.getUuid());
+        }
+        return new SyncDigest(rows, activeRows, newest, fingerprint);
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getActiveRows() {
+        return activeRows;
+    }
+
+    public long getNewest() {
+        return newest;
+    }
+
+    /**
+     * Hash of the database half only, the same on every server reading the same table.
+     */
+    public long databaseHash() {
+        return mix(rows * 31 + activeRows, newest);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SyncDigest)) return false;
+        SyncDigest other = (SyncDigest) o;
+        return rows == other.rows && activeRows == other.activeRows && newest == other.newest && local == other.local;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(mix(rows ^ activeRows, newest ^ local));
+    }
+
+    @Override
+    public String toString() {
+        return "SyncDigest{" +
+                "rows=" + rows +
+                ", activeRows=" + activeRows +
+                ", newest=" + newest +
+                ", local=" + Long.toHexString(local) +
+                '}';
+    }
+
+    private static long mix(UUID uuid) {
+        return mix(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    // Murmur3 finalizer over both halves so summing many uuids doesn't cancel out
+    private static long mix(long most, long least) {
+        long h = most * 0x9E3779B97F4A7C15L ^ least;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,150 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.sync;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.async.NamedThreadFactory;
+import net.rmnad.minecraft.forge.whitelistsynclib.services.BaseService;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link SyncTask} on its own thread at an interval that follows how busy the lists are.
+ *
+ * Right after a sync that changed something the next one comes after the minimum interval, every
+ * quiet poll stretches it up to the maximum, and a failed one doubles it. Every delay is jittered
+ * and the first one is random, so servers restarted together don't keep polling in lockstep.
+ *
+ * With leader election the servers share a lease row in the database. The holder publishes a digest
+ * of the tables every poll (one aggregate query per table) and syncs when it changes; the others only
+ * read that digest and sync when it moved or their last sync is older than the staleness limit.
+ * The load on the database then hardly grows with the number of servers.
+ */
+public class SyncScheduler implements AutoCloseable {
+
+    private final BaseService service;
+    private final SyncSchedulerConfig config;
+    private final SyncTask task;
+    private final ScheduledThreadPoolExecutor executor;
+
+    // Only touched on the scheduler thread
+    private long lastDigest = 0;
+    private long lastSyncNanos = 0;
+    private boolean synced = false;
+
+    private volatile long intervalMillis;
+    private volatile boolean leader = false;
+    private volatile boolean closed = false;
+
+    public SyncScheduler(BaseService service, SyncSchedulerConfig config, SyncTask task) {
+        this.service = service;
+        this.config = config;
+        this.task = task;
+        this.intervalMillis = config.getMinIntervalMillis();
+        this.executor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("WhitelistSync-Scheduler"));
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    public void start() {
+        // Spread the first polls of servers started at the same time over a whole interval
+        schedule(ThreadLocalRandom.current().nextLong(intervalMillis + 1));
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    // A sync that is running finishes, no new one starts.
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdown();
+    }
+
+    private void schedule(long delayMillis) {
+        if (closed) {
+            return;
+        }
+        try {
+            executor.schedule(this::tick, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed meanwhile
+        }
+    }
+
+    private void tick() {
+        if (closed) {
+            return;
+        }
+
+        int changes;
+        try {
+            changes = poll();
+        } catch (RuntimeException e) {
+            WhitelistSyncLib.LOGGER.error("Scheduled sync failed.");
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+            changes = -1;
+        }
+
+        adapt(changes);
+        schedule(nextDelay());
+    }
+
+    private int poll() {
+        if (!config.isLeaderElection()) {
+            return task.sync();
+        }
+
+        boolean wasLeader = leader;
+        leader = service.tryAcquireSyncLease(config.getNodeId(), config.getLeaseMillis());
+        if (leader != wasLeader) {
+            WhitelistSyncLib.LOGGER.info(leader
+                    ? "This server now polls the database for the others."
+                    : "This server no longer holds the sync lease, following the published change digest.");
+        }
+
+        // 0 means unknown: unsupported, failed or nothing published yet, so sync to be safe
+        long digest = leader ? service.publishChangeDigest() : service.readChangeDigest();
+        long now = System.nanoTime();
+        boolean stale = !synced || now - lastSyncNanos >= TimeUnit.MILLISECONDS.toNanos(config.getMaxStaleMillis());
+        if (digest != 0 && digest == lastDigest && !stale) {
+            return 0;
+        }
+
+        int changes = task.sync();
+        if (changes >= 0) {
+            lastDigest = digest;
+            lastSyncNanos = now;
+            synced = true;
+        }
+        return changes;
+    }
+
+    private void adapt(int changes) {
+        long interval;
+        if (changes > 0) {
+            interval = config.getMinIntervalMillis();
+        } else if (changes == 0) {
+            interval = (long) (intervalMillis * config.getBackoffMultiplier());
+        } else {
+            // Give a struggling database some room
+            interval = intervalMillis * 2;
+        }
+        intervalMillis = Math.max(config.getMinIntervalMillis(), Math.min(config.getMaxIntervalMillis(), interval));
+    }
+
+    private long nextDelay() {
+        long delay = intervalMillis;
+        if (leader) {
+            // Renew the lease well before it runs out
+            delay = Math.min(delay, config.getLeaseMillis() / 3);
+        }
+        double factor = 1 + config.getJitter() * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(1, (long) (delay * factor));
+    }
+}
@@ -0,0 +1,106 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.sync;
+
+import java.util.UUID;
+
+/**
+ * Settings for a {@link SyncScheduler}.
+ */
+public class SyncSchedulerConfig {
+
+    // Poll interval right after a change, and the limit it grows to while nothing changes
+    private long minIntervalMillis = 5000;
+    private long maxIntervalMillis = 60000;
+    // Factor the interval grows by after every poll without changes
+    private double backoffMultiplier = 1.5;
+    // Each delay is randomly moved by up to this fraction so servers drift apart
+    private double jitter = 0.2;
+
+    // One server polls the tables and publishes a digest, the others only read the digest
+    private boolean leaderElection = false;
+    // Must be unique per server, defaults to a random id
+    private String nodeId = UUID.randomUUID().toString();
+    private long leaseMillis = 30000;
+    // A follower syncs at least this often even if the digest didn't change
+    private long maxStaleMillis = 600000;
+
+    public SyncSchedulerConfig() {
+    }
+
+    public long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    public void setMinIntervalMillis(long minIntervalMillis) {
+        this.minIntervalMillis = Math.max(1, minIntervalMillis);
+    }
+
+    public long getMaxIntervalMillis() {
+        return maxIntervalMillis;
+    }
+
+    public void setMaxIntervalMillis(long maxIntervalMillis) {
+        this.maxIntervalMillis = Math.max(1, maxIntervalMillis);
+    }
+
+    public double getBackoffMultiplier() {
+        return backoffMultiplier;
+    }
+
+    public void setBackoffMultiplier(double backoffMultiplier) {
+        this.backoffMultiplier = Math.max(1, backoffMultiplier);
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public void setJitter(double jitter) {
+        this.jitter = Math.min(1, Math.max(0, jitter));
+    }
+
+    public boolean isLeaderElection() {
+        return leaderElection;
+    }
+
+    public void setLeaderElection(boolean leaderElection) {
+        this.leaderElection = leaderElection;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public void setLeaseMillis(long leaseMillis) {
+        this.leaseMillis = Math.max(1, leaseMillis);
+    }
+
+    public long getMaxStaleMillis() {
+        return maxStaleMillis;
+    }
+
+    public void setMaxStaleMillis(long maxStaleMillis) {
+        this.maxStaleMillis = Math.max(1, maxStaleMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "SyncSchedulerConfig{" +
+                "minIntervalMillis=" + minIntervalMillis +
+                ", maxIntervalMillis=" + maxIntervalMillis +
+                ", backoffMultiplier=" + backoffMultiplier +
+                ", jitter=" + jitter +
+                ", leaderElection=" + leaderElection +
+                ", nodeId='" + nodeId + '\'' +
+                ", leaseMillis=" + leaseMillis +
+                ", maxStaleMillis=" + maxStaleMillis +
+                '}';
+    }
+}
@@ -0,0 +1,51 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.sync;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.services.BaseService;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * One database to local sync, run by a {@link SyncScheduler}.
+ */
+@FunctionalInterface
+public interface SyncTask {
+
+    /**
+     * @return the number of local changes applied, -1 if the sync failed
+     */
+    int sync();
+
+    /**
+     * Runs {@link BaseService#syncAll} against the local lists the suppliers return at the time of each sync.
+     */
+    static SyncTask syncAll(BaseService service, Supplier<ArrayList<WhitelistedPlayer>> localWhitelistedPlayers, Supplier<ArrayList<OppedPlayer>> localOppedPlayers,
+                            IOnUserAdd onWhitelistAdd, IOnUserRemove onWhitelistRemove, IOnUserAdd onOpAdd, IOnUserRemove onOpRemove) {
+        return () -> {
+            AtomicInteger changes = new AtomicInteger();
+            boolean success = service.syncAll(localWhitelistedPlayers.get(), localOppedPlayers.get(),
+                    (uuid, name) -> {
+                        changes.incrementAndGet();
+                        onWhitelistAdd.call(uuid, name);
+                    },
+                    (uuid, name) -> {
+                        changes.incrementAndGet();
+                        onWhitelistRemove.call(uuid, name);
+                    },
+                    (uuid, name) -> {
+                        changes.incrementAndGet();
+                        onOpAdd.call(uuid, name);
+                    },
+                    (uuid, name) -> {
+                        changes.incrementAndGet();
+                        onOpRemove.call(uuid, name);
+                    });
+            return success ? changes.get() : -1;
+        };
+    }
+}
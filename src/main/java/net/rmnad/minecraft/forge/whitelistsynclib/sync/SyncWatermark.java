@@ -0,0 +1,187 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.sync;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Remembers the newest updated_at value (epoch millis) this server has applied for the
+ * whitelist and op tables, so the next sync only has to read rows changed after it.
+ *
+ * The watermark is kept in a small properties file next to the server so it survives restarts.
+ * Rows are re-read with a small overlap because a transaction can commit a row with an older
+ * timestamp after a newer one has been seen; applying a row twice is harmless.
+ *
+ * updated_at is when a row was written, not when it was committed, so a transaction that runs
+ * longer than the overlap (a large batched import, for example) can commit rows the incremental
+ * query never returns. To bound that, the query bound drops to 0 once the last full read is older
+ * than the full sync interval: such a row is applied at the latest by the first sync that starts
+ * more than fullSyncIntervalMillis after the previous full read, after the row was committed.
+ */
+public class SyncWatermark {
+
+    public static final long DEFAULT_OVERLAP_MILLIS = 5000;
+    public static final long DEFAULT_FULL_SYNC_INTERVAL_MILLIS = 600000;
+
+    private static final String WHITELIST_KEY = "whitelist";
+    private static final String OP_KEY = "op";
+    private static final String WHITELIST_FULL_SYNC_KEY = "whitelist.fullSync";
+    private static final String OP_FULL_SYNC_KEY = "op.fullSync";
+
+    private final Path file;
+    private long overlapMillis = DEFAULT_OVERLAP_MILLIS;
+    private long fullSyncIntervalMillis = DEFAULT_FULL_SYNC_INTERVAL_MILLIS;
+
+    private volatile long whitelistRevision = 0;
+    private volatile long opRevision = 0;
+
+    // When the last successful full read of each table started
+    private volatile long whitelistFullSyncAt = 0;
+    private volatile long opFullSyncAt = 0;
+    // Start of a full read that is still running, becomes the above once its revision is set
+    private volatile long whitelistFullSyncPending = 0;
+    private volatile long opFullSyncPending = 0;
+
+    /**
+     * @param file where the watermark is persisted, null keeps it in memory only
+     */
+    public SyncWatermark(Path file) {
+        this.file = file;
+        load();
+    }
+
+    public long getWhitelistRevision() {
+        return whitelistRevision;
+    }
+
+    // Called after a successful sync, also completes the full read the query bound asked for, if any.
+    public void setWhitelistRevision(long whitelistRevision) {
+        this.whitelistRevision = whitelistRevision;
+        if (whitelistFullSyncPending > 0) {
+            whitelistFullSyncAt = whitelistFullSyncPending;
+            whitelistFullSyncPending = 0;
+        }
+    }
+
+    public long getOpRevision() {
+        return opRevision;
+    }
+
+    public void setOpRevision(long opRevision) {
+        this.opRevision = opRevision;
+        if (opFullSyncPending > 0) {
+            opFullSyncAt = opFullSyncPending;
+            opFullSyncPending = 0;
+        }
+    }
+
+    public long getOverlapMillis() {
+        return overlapMillis;
+    }
+
+    public void setOverlapMillis(long overlapMillis) {
+        this.overlapMillis = Math.max(0, overlapMillis);
+    }
+
+    public long getFullSyncIntervalMillis() {
+        return fullSyncIntervalMillis;
+    }
+
+    // Longest time between two full reads of a table, 0 only reads the whole table when there is no revision.
+    public void setFullSyncIntervalMillis(long fullSyncIntervalMillis) {
+        this.fullSyncIntervalMillis = Math.max(0, fullSyncIntervalMillis);
+    }
+
+    // Lower bound for the next whitelist query, 0 means a full read.
+    public long whitelistQueryBound() {
+        long now = System.currentTimeMillis();
+        if (isFullSyncDue(whitelistRevision, whitelistFullSyncAt, now)) {
+            whitelistFullSyncPending = now;
+            return 0;
+        }
+        return queryBound(whitelistRevision);
+    }
+
+    // Lower bound for the next op query, 0 means a full read.
+    public long opQueryBound() {
+        long now = System.currentTimeMillis();
+        if (isFullSyncDue(opRevision, opFullSyncAt, now)) {
+            opFullSyncPending = now;
+            return 0;
+        }
+        return queryBound(opRevision);
+    }
+
+    // Forget everything so the next sync reads the whole table again.
+    public void reset() {
+        whitelistRevision = 0;
+        opRevision = 0;
+        whitelistFullSyncAt = 0;
+        opFullSyncAt = 0;
+        save();
+    }
+
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(WHITELIST_KEY, Long.toString(whitelistRevision));
+        properties.setProperty(OP_KEY, Long.toString(opRevision));
+        properties.setProperty(WHITELIST_FULL_SYNC_KEY, Long.toString(whitelistFullSyncAt));
+        properties.setProperty(OP_FULL_SYNC_KEY, Long.toString(opFullSyncAt));
+
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+
+            // Write to a temp file first so a crash never leaves a half written watermark
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "WhitelistSync sync watermark");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            WhitelistSyncLib.LOGGER.error("Failed to save sync watermark to " + file);
+            WhitelistSyncLib.LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    private void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+            whitelistRevision = Long.parseLong(properties.getProperty(WHITELIST_KEY, "0"));
+            opRevision = Long.parseLong(properties.getProperty(OP_KEY, "0"));
+            // Files from before the full sync interval have no time, their first sync reads everything
+            whitelistFullSyncAt = Long.parseLong(properties.getProperty(WHITELIST_FULL_SYNC_KEY, "0"));
+            opFullSyncAt = Long.parseLong(properties.getProperty(OP_FULL_SYNC_KEY, "0"));
+        } catch (IOException | NumberFormatException e) {
+            WhitelistSyncLib.LOGGER.warn("Could not read sync watermark from " + file + ", doing a full sync.");
+            whitelistRevision = 0;
+            opRevision = 0;
+            whitelistFullSyncAt = 0;
+            opFullSyncAt = 0;
+        }
+    }
+
+    private boolean isFullSyncDue(long revision, long fullSyncAt, long now) {
+        return revision <= 0 || (fullSyncIntervalMillis > 0 && now - fullSyncAt >= fullSyncIntervalMillis);
+    }
+
+    private long queryBound(long revision) {
+        return revision <= 0 ? 0 : Math.max(1, revision - overlapMillis);
+    }
+}
@@ -0,0 +1,187 @@
+package net.rmnad.minecraft.forge.whitelistsynclib.sync;
+
+import net.rmnad.minecraft.forge.whitelistsynclib.WhitelistSyncLib;
+import net.rmnad.minecraft.forge.whitelistsynclib.cache.UuidSet;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserAdd;
+import net.rmnad.minecraft.forge.whitelistsynclib.callbacks.IOnUserRemove;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.OppedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.models.WhitelistedPlayer;
+import net.rmnad.minecraft.forge.whitelistsynclib.services.BaseService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two-way sync of a local list and a database table against the state both had after the last merge.
+ *
+ * Every database row (removed players included, they are the tombstones) and every local player is
+ * looked at once. A side whose state differs from the {@link MergeBase} changed it since the last
+ * merge and wins; since the state is just on/off, two sides that both changed a player always agree.
+ * Database changes are applied locally through the callbacks, local changes are sent to the database
+ * as one batched write, and the merged state becomes the new base.
+ *
+ * Without a base for the list the database wins every difference, except players it has no row for
+ * at all, which are added to it. Names come from the database when it has a row for the player.
+ * A local player without a name can't be written, it is left out of the write and the base and
+ * comes up again on the next merge.
+ */
+public final class ThreeWayMerge {
+
+    private ThreeWayMerge() {
+    }
+
+    public static boolean mergeWhitelist(BaseService service, ArrayList<WhitelistedPlayer> localWhitelistedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        long startTime = System.nanoTime();
+
+        Pass pass = new Pass(SyncDiff.forWhitelist(localWhitelistedPlayers), base.getWhitelist());
+        if (!service.streamAllWhitelistedPlayersFromDatabase(row -> {
+            if (row.hasUuid()) {
+                pass.row(row.getUuidMostSignificantBits(), row.getUuidLeastSignificantBits(), row.getName(), row.isWhitelisted());
+            }
+        })) {
+            return false;
+        }
+        for (WhitelistedPlayer player : localWhitelistedPlayers) {
+            if (player.hasUuid()) {
+                pass.local(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits(), player.getName());
+            }
+        }
+
+        List<WhitelistedPlayer> writes = new ArrayList<>(pass.writes.size());
+        for (Push push : pass.writes) {
+            writes.add(new WhitelistedPlayer(push.uuid.toString(), push.name, push.active));
+        }
+        if (!writes.isEmpty() && !service.writeWhitelistedPlayers(writes)) {
+            WhitelistSyncLib.LOGGER.error("Failed to write local whitelist changes, merge aborted.");
+            return false;
+        }
+
+        if (pass.unnamed > 0) {
+            WhitelistSyncLib.LOGGER.warn("Skipped {} local whitelist players without a name, they are not in the database.", pass.unnamed);
+        }
+
+        int records = pass.diff.apply(onUserAdd, onUserRemove);
+        base.setWhitelist(pass.merged);
+        base.save();
+
+        WhitelistSyncLib.LOGGER.debug("Merged whitelist | Took {}ms | Applied {} local and wrote {} database changes.",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), records, writes.size());
+        return true;
+    }
+
+    public static boolean mergeOps(BaseService service, ArrayList<OppedPlayer> localOppedPlayers, MergeBase base, IOnUserAdd onUserAdd, IOnUserRemove onUserRemove) {
+        long startTime = System.nanoTime();
+
+        Pass pass = new Pass(SyncDiff.forOps(localOppedPlayers), base.getOps());
+        if (!service.streamAllOppedPlayersFromDatabase(row -> {
+            if (row.hasUuid()) {
+                pass.row(row.getUuidMostSignificantBits(), row.getUuidLeastSignificantBits(), row.getName(), row.isOp());
+            }
+        })) {
+            return false;
+        }
+        for (OppedPlayer player : localOppedPlayers) {
+            if (player.hasUuid()) {
+                pass.local(player.getUuidMostSignificantBits(), player.getUuidLeastSignificantBits(), player.getName());
+            }
+        }
+
+        List<OppedPlayer> writes = new ArrayList<>(pass.writes.size());
+        for (Push push : pass.writes) {
+            writes.add(new OppedPlayer(push.uuid.toString(), push.name, push.active));
+        }
+        if (!writes.isEmpty() && !service.writeOppedPlayers(writes)) {
+            WhitelistSyncLib.LOGGER.error("Failed to write local op list changes, merge aborted.");
+            return false;
+        }
+
+        if (pass.unnamed > 0) {
+            WhitelistSyncLib.LOGGER.warn("Skipped {} local op list players without a name, they are not in the database.", pass.unnamed);
+        }
+
+        int records = pass.diff.apply(onUserAdd, onUserRemove);
+        base.setOps(pass.merged);
+        base.save();
+
+        WhitelistSyncLib.LOGGER.debug("Merged op list | Took {}ms | Applied {} local and wrote {} database changes.",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), records, writes.size());
+        return true;
+    }
+
+    /**
+     * State of one merge while the rows are read.
+     */
+    private static final class Pass {
+        // Its index is the local list, it collects the changes to apply locally
+        private final SyncDiff diff;
+        // Null when the list was never merged
+        private final UuidSet base;
+        // Players the database has a row for
+        private final UuidSet seen = new UuidSet();
+
+        private final List<Push> writes = new ArrayList<>();
+        private final List<UUID> merged = new ArrayList<>();
+        // Local players that could not be written for lack of a name
+        private int unnamed = 0;
+
+        private Pass(SyncDiff diff, UuidSet base) {
+            this.diff = diff;
+            this.base = base;
+        }
+
+        private void row(long most, long least, String name, boolean active) {
+            seen.add(most, least);
+            boolean local = diff.isLocal(most, least);
+
+            boolean result;
+            if (local == active) {
+                result = active;
+            } else if (base != null && base.contains(most, least) != local) {
+                // Local moved away from the base, the database didn't
+                result = local;
+                writes.add(new Push(new UUID(most, least), name, local));
+            } else {
+                // The database changed it, or there is no base and the database wins
+                result = active;
+                diff.accept(most, least, name, active);
+            }
+
+            if (result) {
+                merged.add(new UUID(most, least));
+            }
+        }
+
+        // Called for every local player after all rows were read
+        private void local(long most, long least, String name) {
+            // Also skips duplicates in the local list
+            if (!seen.add(most, least)) {
+                return;
+            }
+
+            if (base != null && base.contains(most, least)) {
+                // Was on both sides, its row has since been deleted from the database
+                diff.accept(most, least, name, false);
+            } else if (name == null) {
+                // The write would skip it, so the base must not claim the database has it
+                unnamed++;
+            } else {
+                writes.add(new Push(new UUID(most, least), name, true));
+                merged.add(new UUID(most, least));
+            }
+        }
+    }
+
+    private static final class Push {
+        private final UUID uuid;
+        private final String name;
+        private final boolean active;
+
+        private Push(UUID uuid, String name, boolean active) {
+            this.uuid = uuid;
+            this.name = name;
+            this.active = active;
+        }
+    }
+}